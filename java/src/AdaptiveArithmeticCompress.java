@@ -17,19 +17,36 @@ import java.io.InputStream;
 
 /**
  * Compression application using adaptive arithmetic coding.
- * <p>Usage: java AdaptiveArithmeticCompress InputFile OutputFile</p>
+ * <p>Usage: java AdaptiveArithmeticCompress [-rescale Limit] InputFile OutputFile</p>
  * <p>Then use the corresponding "AdaptiveArithmeticDecompress" application to recreate the original input file.</p>
  * <p>Note that the application starts with a flat frequency table of 257 symbols (all set to a frequency of 1),
  * and updates it after each byte encoded. The corresponding decompressor program also starts with a flat
  * frequency table and updates it after each byte decoded. It is by design that the compressor and
  * decompressor have synchronized states, so that the data can be decompressed properly.</p>
+ * <p>Whenever the frequency total reaches the rescaling limit, all the frequencies are halved (see
+ * {@link RescalingFrequencyTable}), so that inputs of any length can be compressed and the model keeps
+ * adapting. The compressed file format starts with the limit as a 32-bit unsigned integer, where 0 means
+ * that the frequencies are never rescaled, and then followed by the arithmetic-coded data.</p>
  */
 public class AdaptiveArithmeticCompress {
 	
+	// The default total at which the frequencies are halved. Must be 0 or in the range
+	// [514, 2^30], where the upper bound is the maximum total of a 32-bit arithmetic coder.
+	static final int DEFAULT_RESCALE_LIMIT = 1 << 16;
+	
+	// Number of bytes read from the input stream and encoded at a time.
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	
 	public static void main(String[] args) throws IOException {
 		// Handle command line arguments
+		int rescaleLimit = DEFAULT_RESCALE_LIMIT;
+		if (args.length == 4 && args[0].equals("-rescale")) {
+			rescaleLimit = Integer.parseInt(args[1]);
+			args = new String[]{args[2], args[3]};
+		}
 		if (args.length != 2) {
-			System.err.println("Usage: java AdaptiveArithmeticCompress InputFile OutputFile");
+			System.err.println("Usage: java AdaptiveArithmeticCompress [-rescale Limit] InputFile OutputFile");
 			System.exit(1);
 			return;
 		}
@@ -39,26 +56,45 @@ public class AdaptiveArithmeticCompress {
 		// Perform file compression
 		try (InputStream in = new BufferedInputStream(new FileInputStream(inputFile));
 				BitOutputStream out = new BitOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
-			compress(in, out);
+			compress(in, out, rescaleLimit);
 		}
 	}
 	
 	
 	// To allow unit testing, this method is package-private instead of private.
 	static void compress(InputStream in, BitOutputStream out) throws IOException {
-		FlatFrequencyTable initFreqs = new FlatFrequencyTable(257);
-		FrequencyTable freqs = new SimpleFrequencyTable(initFreqs);
+		compress(in, out, DEFAULT_RESCALE_LIMIT);
+	}
+	
+	
+	// To allow unit testing, this method is package-private instead of private.
+	static void compress(InputStream in, BitOutputStream out, int rescaleLimit) throws IOException {
+		FrequencyTable freqs = newFrequencyTable(rescaleLimit);
+		out.writeBits(32, rescaleLimit);
 		ArithmeticEncoder enc = new ArithmeticEncoder(32, out);
+		byte[] buf = new byte[BUFFER_SIZE];
 		while (true) {
-			// Read and encode one byte
-			int symbol = in.read();
-			if (symbol == -1)
+			// Read a block of bytes, and encode each one and update the model
+			int n = in.read(buf);
+			if (n == -1)
 				break;
-			enc.write(freqs, symbol);
-			freqs.increment(symbol);
+			enc.writeAllAdaptive(freqs, buf, 0, n);
 		}
 		enc.write(freqs, 256);  // EOF
 		enc.finish();  // Flush remaining code bits
 	}
 	
+	
+	// Returns the initial model shared by the compressor and decompressor: a flat table
+	// of 257 symbols that is rescaled at the given limit, or never rescaled if it is 0.
+	static FrequencyTable newFrequencyTable(int rescaleLimit) {
+		if (rescaleLimit != 0 && !(514 <= rescaleLimit && rescaleLimit <= 1 << 30))
+			throw new IllegalArgumentException("Rescale limit out of range");
+		FlatFrequencyTable initFreqs = new FlatFrequencyTable(257);
+		FrequencyTable freqs = new FenwickFrequencyTable(initFreqs);
+		if (rescaleLimit != 0)
+			freqs = new RescalingFrequencyTable(freqs, rescaleLimit);
+		return freqs;
+	}
+	
 }
@@ -18,10 +18,15 @@ import java.io.OutputStream;
 /**
  * Decompression application using adaptive arithmetic coding.
  * <p>Usage: java AdaptiveArithmeticDecompress InputFile OutputFile</p>
- * <p>This decompresses files generated by the "AdaptiveArithmeticCompress" application.</p>
+ * <p>This decompresses files generated by the "AdaptiveArithmeticCompress" application,
+ * applying the same frequency rescaling limit, which is read from the start of the file.</p>
  */
 public class AdaptiveArithmeticDecompress {
 	
+	// Number of bytes decoded and written to the output stream at a time.
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	
 	public static void main(String[] args) throws IOException {
 		// Handle command line arguments
 		if (args.length != 2) {
@@ -42,16 +47,21 @@ public class AdaptiveArithmeticDecompress {
 	
 	// To allow unit testing, this method is package-private instead of private.
 	static void decompress(BitInputStream in, OutputStream out) throws IOException {
-		FlatFrequencyTable initFreqs = new FlatFrequencyTable(257);
-		FrequencyTable freqs = new SimpleFrequencyTable(initFreqs);
+		int rescaleLimit = (int)in.readBits(32);
+		FrequencyTable freqs;
+		try {
+			freqs = AdaptiveArithmeticCompress.newFrequencyTable(rescaleLimit);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid rescale limit in stream header", e);
+		}
 		ArithmeticDecoder dec = new ArithmeticDecoder(32, in);
+		byte[] buf = new byte[BUFFER_SIZE];
 		while (true) {
-			// Decode and write one byte
-			int symbol = dec.read(freqs);
-			if (symbol == 256)  // EOF symbol
+			// Decode a block of bytes while updating the model, and write them
+			int n = dec.readAllAdaptive(freqs, buf, 0, buf.length);
+			out.write(buf, 0, n);
+			if (n < buf.length)  // EOF symbol
 				break;
-			out.write(symbol);
-			freqs.increment(symbol);
 		}
 	}
 	
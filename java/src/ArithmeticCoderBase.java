@@ -54,6 +54,14 @@ public abstract class ArithmeticCoderBase {
 	/** Bit mask of numStateBits ones, which is 0111...111. */
 	protected final long stateMask;
 	
+	/**
+	 * Whether this coder trusts its frequency tables and its own state. When true, frequency tables are
+	 * not wrapped in a {@link CheckedFrequencyTable} and the internal invariant checks are skipped, so that
+	 * coding a symbol allocates no objects. The arguments are still checked for a zero-frequency symbol
+	 * and a total that is too large, because those would silently corrupt the output.
+	 */
+	protected final boolean trusted;
+	
 	
 	
 	/*---- State fields ----*/
@@ -73,11 +81,22 @@ public abstract class ArithmeticCoderBase {
 	/*---- Constructor ----*/
 	
 	/**
-	 * Constructs an arithmetic coder, which initializes the code range.
+	 * Constructs an arithmetic coder in checked mode, which initializes the code range.
 	 * @param numBits the number of bits for the arithmetic coding range
 	 * @throws IllegalArgumentException if stateSize is outside the range [1, 62]
 	 */
 	public ArithmeticCoderBase(int numBits) {
+		this(numBits, false);
+	}
+	
+	
+	/**
+	 * Constructs an arithmetic coder in the specified mode, which initializes the code range.
+	 * @param numBits the number of bits for the arithmetic coding range
+	 * @param trusted whether to skip the frequency table wrapping and the invariant checks
+	 * @throws IllegalArgumentException if stateSize is outside the range [1, 62]
+	 */
+	public ArithmeticCoderBase(int numBits, boolean trusted) {
 		if (!(1 <= numBits && numBits <= 62))
 			throw new IllegalArgumentException("State size out of range");
 		numStateBits = numBits;
@@ -87,6 +106,7 @@ public abstract class ArithmeticCoderBase {
 		minimumRange = quarterRange + 2;  // At least 2
 		maximumTotal = Math.min(Long.MAX_VALUE / fullRange, minimumRange);
 		stateMask = fullRange - 1;
+		this.trusted = trusted;
 		
 		low = 0;
 		high = stateMask;
@@ -96,6 +116,35 @@ public abstract class ArithmeticCoderBase {
 	
 	/*---- Methods ----*/
 	
+	/**
+	 * Checks that the specified frequency table is consistent, as a {@link CheckedFrequencyTable} would check each
+	 * query: every frequency is non-negative, the cumulative frequencies and the total agree with the frequencies,
+	 * and {@code getSymbol()} maps both ends of every non-empty range back to its symbol. In trusted mode, the bulk
+	 * coding methods call this once per call instead of wrapping the table. This takes O(n) queries for n symbols.
+	 * @param freqs the frequency table to check
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 * @throws AssertionError if the frequency table is inconsistent
+	 */
+	protected static void checkTable(FrequencyTable freqs) {
+		int numSym = freqs.getSymbolLimit();
+		if (numSym < 1)
+			throw new AssertionError("Non-positive symbol limit");
+		long low = 0;
+		for (int i = 0; i < numSym; i++) {
+			int freq = freqs.get(i);
+			if (freq < 0)
+				throw new AssertionError("Negative symbol frequency");
+			if (freqs.getLow(i) != low || freqs.getHigh(i) != low + freq)
+				throw new AssertionError("Cumulative frequencies do not match the frequencies");
+			if (freq > 0 && (freqs.getSymbol((int)low) != i || freqs.getSymbol((int)(low + freq - 1)) != i))
+				throw new AssertionError("Symbol search does not match the cumulative frequencies");
+			low += freq;
+		}
+		if (freqs.getTotal() != low)
+			throw new AssertionError("Total does not match the frequencies");
+	}
+	
+	
 	/**
 	 * Updates the code range (low and high) of this arithmetic coder as a result
 	 * of processing the specified symbol with the specified frequency table.
@@ -112,17 +161,20 @@ public abstract class ArithmeticCoderBase {
 	 *   fullRange. These invariants for 'range' essentially dictate the maximum total that the
 	 *   incoming frequency table can have, such that intermediate calculations don't overflow.</li>
 	 * </ul>
+	 * <p>In trusted mode, these invariants are assumed rather than checked.</p>
 	 * @param freqs the frequency table to use
 	 * @param symbol the symbol that was processed
 	 * @throws IllegalArgumentException if the symbol has zero frequency or the frequency table's total is too large
 	 */
-	protected void update(CheckedFrequencyTable freqs, int symbol) throws IOException {
+	protected void update(FrequencyTable freqs, int symbol) throws IOException {
 		// State check
-		if (low >= high || (low & stateMask) != low || (high & stateMask) != high)
-			throw new AssertionError("Low or high out of range");
 		long range = high - low + 1;
-		if (!(minimumRange <= range && range <= fullRange))
-			throw new AssertionError("Range out of range");
+		if (!trusted) {
+			if (low >= high || (low & stateMask) != low || (high & stateMask) != high)
+				throw new AssertionError("Low or high out of range");
+			if (!(minimumRange <= range && range <= fullRange))
+				throw new AssertionError("Range out of range");
+		}
 		
 		// Frequency table values check
 		long total = freqs.getTotal();
@@ -139,34 +191,44 @@ public abstract class ArithmeticCoderBase {
 		low = newLow;
 		high = newHigh;
 		
-		// While low and high have the same top bit value, shift them out
-		while (((low ^ high) & halfRange) == 0) {
-			shift();
-			low  = ((low  << 1) & stateMask);
-			high = ((high << 1) & stateMask) | 1;
+		// While low and high have the same top bit value, shift them out. All such
+		// bits are handled at once by counting the leading equal bits (at least 0).
+		int numShifts = Long.numberOfLeadingZeros(low ^ high) - (64 - numStateBits);
+		if (numShifts > 0) {
+			shift(numShifts);
+			low  = ((low  << numShifts) & stateMask);
+			high = ((high << numShifts) & stateMask) | ((1L << numShifts) - 1);
 		}
 		// Now low's top bit must be 0 and high's top bit must be 1
 		
-		// While low's top two bits are 01 and high's are 10, delete the second highest bit of both
-		while ((low & ~high & quarterRange) != 0) {
-			underflow();
-			low = (low << 1) ^ halfRange;
-			high = ((high ^ halfRange) << 1) | halfRange | 1;
+		// While low's top two bits are 01 and high's are 10, delete the second highest bit of both.
+		// All such bits are handled at once by counting the run of positions (starting at the second
+		// highest bit) where low has a 1 and high has a 0.
+		int numUnderflows = Long.numberOfLeadingZeros(~((low & ~high) << (65 - numStateBits)));
+		if (numUnderflows > 0) {
+			underflow(numUnderflows);
+			low  = ((low  << numUnderflows) & (halfRange - 1));
+			high = ((high << numUnderflows) & (halfRange - 1)) | halfRange | ((1L << numUnderflows) - 1);
 		}
 	}
 	
 	
 	/**
-	 * Called to handle the situation when the top bit of {@code low} and {@code high} are equal.
+	 * Called to handle the situation when the top {@code numBits} bits of {@code low} and {@code high}
+	 * are equal, before they are shifted out. This is equivalent to handling the top bit being equal
+	 * {@code numBits} times in a row, one bit at a time.
+	 * @param numBits the number of equal top bits, which is in the range [1, numStateBits)
 	 * @throws IOException if an I/O exception occurred
 	 */
-	protected abstract void shift() throws IOException;
+	protected abstract void shift(int numBits) throws IOException;
 	
 	
 	/**
-	 * Called to handle the situation when low=01(...) and high=10(...).
+	 * Called to handle the situation when low=01(...) and high=10(...), repeated {@code count} times in a row,
+	 * before the second highest bit of both is deleted that many times.
+	 * @param count the number of consecutive underflow bits, which is in the range [1, numStateBits)
 	 * @throws IOException if an I/O exception occurred
 	 */
-	protected abstract void underflow() throws IOException;
+	protected abstract void underflow(int count) throws IOException;
 	
 }
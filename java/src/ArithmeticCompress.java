@@ -13,85 +13,250 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 
 /**
  * Compression application using static arithmetic coding.
- * <p>Usage: java ArithmeticCompress InputFile OutputFile</p>
- * <p>Then use the corresponding "ArithmeticDecompress" application to recreate the original input file.</p>
- * <p>Note that the application uses an alphabet of 257 symbols - 256 symbols for the byte
- * values and 1 symbol for the EOF marker. The compressed file format starts with a list
- * of 256 symbol frequencies, and then followed by the arithmetic-coded data.</p>
+ * <p>Usage: java ArithmeticCompress [-twopass] InputFile OutputFile</p>
+ * <p>Then use the corresponding "ArithmeticDecompress" application to recreate the original input file.
+ * Either file name can be "-" to use standard input or output instead.</p>
+ * <p>By default, the input is read only once, in blocks of 64 KiB that are each coded with a static frequency
+ * table. The compressed file format starts with the 32-bit marker 0xFFFFFFFF and a byte for the format version (4),
+ * followed by the arithmetic-coded data. The data consists of the blocks, each with its length as 32 bits, a table
+ * selector, and its bytes. It ends with a block of length 0. The selector is 0 if the block's own 256 symbol
+ * frequencies follow it, coded with adaptive models that learn over all the blocks (see {@link FrequencyHeader}),
+ * or i &ge; 1 to reuse the i-th most recently used table.
+ * The compressor picks whichever choice is estimated to take the fewest bits, counting the header of a new
+ * table, so that a new table is only sent where the statistics of the input change enough to pay for it.
+ * The frequencies are coded along with the bytes, so that a decoder can switch tables without leaving the
+ * arithmetic code.</p>
+ * <p>With "-twopass", the input file is read twice instead: once to count the symbol frequencies of
+ * the whole file, and once to code it. This format uses an alphabet of 257 symbols - 256 symbols for
+ * the byte values and 1 symbol for the EOF marker. It starts with the marker and version (3), followed by
+ * the 256 symbol frequencies as raw bits (see {@link FrequencyHeader}), and then the arithmetic-coded data.
+ * The original format had no marker and version, and the frequencies were 32 bits each.</p>
+ * <p>Both formats normalize large frequencies to a total of 2^16, which keeps the headers small.</p>
  */
 public class ArithmeticCompress {
 	
+	// Number of bytes read from the input stream and encoded at a time.
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	// The number of bytes in each block of the single-pass format, except the last one.
+	static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+	
+	// The largest block, whose total frequency still fits in a 32-bit arithmetic coder.
+	static final int MAX_BLOCK_SIZE = 1 << 30;
+	
+	// The first 32 bits of the formats that have a version. The original format starts with the
+	// frequency of symbol 0 instead, which is never this large because frequencies are ints.
+	static final long FORMAT_MARKER = 0xFFFFFFFFL;
+	
+	// The versions that follow the marker. Versions 1 and 2 were never released.
+	static final int VERSION_TWO_PASS = 3;
+	static final int VERSION_ADAPTIVE_BLOCKS = 4;
+	
+	// The number of recently used tables that a block of the adaptive format can select.
+	static final int MAX_RECENT_TABLES = 8;
+	
+	// Codes the table selector of each block, which is 0 for a new table or the 1-based index of a recent table.
+	static final FrequencyTable TABLE_SELECTOR_FREQS = new FlatFrequencyTable(MAX_RECENT_TABLES + 1);
+	
+	// Codes each 32-bit number in the block format as two 16-bit halves.
+	static final FrequencyTable HALF_WORD_FREQS = new FlatFrequencyTable(1 << 16);
+	
+	
 	public static void main(String[] args) throws IOException {
 		// Handle command line arguments
-		if (args.length != 2) {
-			System.err.println("Usage: java ArithmeticCompress InputFile OutputFile");
+		boolean twoPass = args.length == 3 && args[0].equals("-twopass");
+		if (twoPass)
+			args = Arrays.copyOfRange(args, 1, args.length);
+		if (args.length != 2 || twoPass && args[0].equals("-")) {
+			System.err.println("Usage: java ArithmeticCompress [-twopass] InputFile OutputFile");
 			System.exit(1);
 			return;
 		}
-		File inputFile  = new File(args[0]);
-		File outputFile = new File(args[1]);
 		
-		// Read input file once to compute symbol frequencies
-		FrequencyTable freqs = getFrequencies(inputFile);
-		freqs.increment(256);  // EOF symbol gets a frequency of 1
-		
-		// Read input file again, compress with arithmetic coding, and write output file
-		try (InputStream in = new BufferedInputStream(new FileInputStream(inputFile));
-				BitOutputStream out = new BitOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
-			writeFrequencies(out, freqs);
-			compress(freqs, in, out);
+		if (twoPass) {
+			File inputFile  = new File(args[0]);
+			
+			// Read input file once to count the symbols, and normalize the counts for the coder and a compact header
+			FrequencyTable freqs = toFrequencyTable(getFrequencies(inputFile));
+			
+			// Read input file again, compress with arithmetic coding, and write output file
+			try (InputStream in = new BufferedInputStream(new FileInputStream(inputFile));
+					BitOutputStream out = new BitOutputStream(openOutput(args[1]))) {
+				writeFrequencies(out, freqs);
+				compress(freqs, in, out);
+			}
+		} else {
+			// Read the input once, compressing each block as soon as it is read
+			try (InputStream in = openInput(args[0]);
+					BitOutputStream out = new BitOutputStream(openOutput(args[1]))) {
+				compressBlocks(in, out, DEFAULT_BLOCK_SIZE);
+			}
 		}
 	}
 	
 	
-	// Returns a frequency table based on the bytes in the given file.
-	// Also contains an extra entry for symbol 256, whose frequency is set to 0.
-	private static FrequencyTable getFrequencies(File file) throws IOException {
-		FrequencyTable freqs = new SimpleFrequencyTable(new int[257]);
-		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+	// Returns a buffered stream for the given file name, or standard input if it is "-".
+	private static InputStream openInput(String name) throws IOException {
+		return new BufferedInputStream(name.equals("-") ? System.in : new FileInputStream(name));
+	}
+	
+	
+	// Returns a buffered stream for the given file name, or standard output if it is "-".
+	private static OutputStream openOutput(String name) throws IOException {
+		return new BufferedOutputStream(name.equals("-") ? System.out : new FileOutputStream(name));
+	}
+	
+	
+	// Returns the number of occurrences of each byte value in the given file. The counts are longs,
+	// so that a file of any size can be counted without overflow.
+	private static long[] getFrequencies(File file) throws IOException {
+		long[] counts = new long[256];
+		byte[] buf = new byte[BUFFER_SIZE];
+		try (InputStream input = new FileInputStream(file)) {
 			while (true) {
-				int b = input.read();
-				if (b == -1)
+				int n = input.read(buf);
+				if (n == -1)
 					break;
-				freqs.increment(b);
+				for (int i = 0; i < n; i++)
+					counts[buf[i] & 0xFF]++;
 			}
 		}
-		return freqs;
+		return counts;
+	}
+	
+	
+	// Returns a frequency table for the two-pass format, with the given byte counts normalized to a total
+	// that the coder accepts (keeping every non-zero count), and an extra symbol 256 with a frequency of 1.
+	// To allow unit testing, this method is package-private instead of private.
+	static FrequencyTable toFrequencyTable(long[] counts) {
+		int[] normalized = Arrays.copyOf(FrequencyHeader.normalize(counts, FrequencyHeader.NORMALIZED_TOTAL), 257);
+		normalized[256] = 1;  // EOF symbol gets a frequency of 1
+		return new SimpleFrequencyTable(normalized);
 	}
 	
 	
+	// Writes the marker and version of the two-pass format, followed by the frequencies of symbols 0 to 255.
 	// To allow unit testing, this method is package-private instead of private.
 	static void writeFrequencies(BitOutputStream out, FrequencyTable freqs) throws IOException {
-		for (int i = 0; i < 256; i++)
-			writeInt(out, 32, freqs.get(i));
+		out.writeBits(32, FORMAT_MARKER);
+		out.writeBits(8, VERSION_TWO_PASS);
+		int[] counts = new int[256];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = freqs.get(i);
+		FrequencyHeader.write(counts, out);
 	}
 	
 	
 	// To allow unit testing, this method is package-private instead of private.
 	static void compress(FrequencyTable freqs, InputStream in, BitOutputStream out) throws IOException {
 		ArithmeticEncoder enc = new ArithmeticEncoder(32, out);
+		byte[] buf = new byte[BUFFER_SIZE];
 		while (true) {
-			int symbol = in.read();
-			if (symbol == -1)
+			int n = in.read(buf);
+			if (n == -1)
 				break;
-			enc.write(freqs, symbol);
+			enc.writeAll(freqs, buf, 0, n);
 		}
 		enc.write(freqs, 256);  // EOF
 		enc.finish();  // Flush remaining code bits
 	}
 	
 	
-	// Writes an unsigned integer of the given bit width to the given stream.
-	private static void writeInt(BitOutputStream out, int numBits, int value) throws IOException {
-		if (numBits < 0 || numBits > 32)
-			throw new IllegalArgumentException();
+	// Compresses the given input in the single-pass format, reading it only once. Each block of the given size
+	// (except the last, which may be shorter) is counted, and then coded with either its own frequencies or a
+	// recently used table, whichever is estimated to take fewer bits including the header of the new table.
+	// To allow unit testing, this method is package-private instead of private.
+	static void compressBlocks(InputStream in, BitOutputStream out, int blockSize) throws IOException {
+		if (!(1 <= blockSize && blockSize <= MAX_BLOCK_SIZE))
+			throw new IllegalArgumentException("Block size out of range");
+		out.writeBits(32, FORMAT_MARKER);
+		out.writeBits(8, VERSION_ADAPTIVE_BLOCKS);
 		
-		for (int i = numBits - 1; i >= 0; i--)
-			out.write((value >>> i) & 1);  // Big endian
+		ArithmeticEncoder enc = new ArithmeticEncoder(32, out);
+		byte[] block = new byte[blockSize];
+		long[] counts = new long[256];
+		int[][] recentTables = new int[MAX_RECENT_TABLES][];  // Most recently used first, then nulls
+		FrequencyHeader.AdaptiveModel headerModel = new FrequencyHeader.AdaptiveModel();
+		while (true) {
+			int n = readBlock(in, block);
+			enc.write(HALF_WORD_FREQS, n >>> 16);
+			enc.write(HALF_WORD_FREQS, n & 0xFFFF);
+			if (n == 0)  // The empty block ends the stream
+				break;
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++)
+				counts[block[i] & 0xFF]++;
+			
+			// Choose the cheapest table, where the selector costs the same for every choice
+			int[] newFreqs = FrequencyHeader.normalize(counts, FrequencyHeader.NORMALIZED_TOTAL);
+			double bestCost = getCodingCost(counts, newFreqs) + headerModel.getCost(newFreqs);
+			int bestIndex = -1;
+			for (int i = 0; i < recentTables.length && recentTables[i] != null; i++) {
+				double cost = getCodingCost(counts, recentTables[i]);
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestIndex = i;
+				}
+			}
+			
+			enc.write(TABLE_SELECTOR_FREQS, bestIndex + 1);
+			int[] freqs;
+			if (bestIndex == -1) {
+				FrequencyHeader.write(newFreqs, enc, headerModel);
+				freqs = newFreqs;
+				moveToFront(recentTables, recentTables.length - 1, freqs);
+			} else {
+				freqs = recentTables[bestIndex];
+				moveToFront(recentTables, bestIndex, freqs);
+			}
+			enc.writeAll(new StaticFrequencyTable(freqs), block, 0, n);
+		}
+		enc.finish();  // Flush remaining code bits
+	}
+	
+	
+	// Returns the number of bits that coding symbols with the given counts would take with the given frequencies,
+	// ignoring the rounding of the coder, or infinity if a symbol that occurs has a frequency of 0.
+	private static double getCodingCost(long[] counts, int[] freqs) {
+		long total = 0;
+		for (int freq : freqs)
+			total += freq;
+		double result = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0)
+				continue;
+			if (freqs[i] == 0)
+				return Double.POSITIVE_INFINITY;
+			result += counts[i] * Math.log((double)total / freqs[i]);
+		}
+		return result / Math.log(2);
+	}
+	
+	
+	// Moves the table at the given index of the given list to the front, or replaces it with the given table if
+	// they differ, and shifts the tables before the index down by one. The decompressor keeps the same list.
+	static void moveToFront(int[][] tables, int index, int[] table) {
+		System.arraycopy(tables, 0, tables, 1, index);
+		tables[0] = table;
+	}
+	
+	
+	// Reads bytes until the given array is full or the input ends, and returns the number of bytes read.
+	private static int readBlock(InputStream in, byte[] block) throws IOException {
+		int n = 0;
+		while (n < block.length) {
+			int k = in.read(block, n, block.length - n);
+			if (k == -1)
+				break;
+			n += k;
+		}
+		return n;
 	}
 	
 }
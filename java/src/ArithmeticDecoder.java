@@ -38,11 +38,30 @@ public final class ArithmeticDecoder extends ArithmeticCoderBase {
 	 * @throws IOException if an I/O exception occurred
 	 */
 	public ArithmeticDecoder(int numBits, BitInputStream in) throws IOException {
-		super(numBits);
+		this(numBits, in, false);
+	}
+	
+	
+	/**
+	 * Constructs an arithmetic coding decoder based on the specified bit input stream
+	 * in the specified mode, and fills the code bits. In trusted mode, frequency tables are used
+	 * directly instead of being wrapped in a new {@link CheckedFrequencyTable} for each symbol,
+	 * and the internal invariant checks are skipped. The bulk methods ({@code readAll} and
+	 * {@code readAllAdaptive}) still check each table once at the start of each call, but
+	 * {@link #read(FrequencyTable)} checks nothing except the table's total, so the caller guarantees
+	 * that the tables it passes are consistent, such as the implementations in this package. A table
+	 * that is not may decode wrong symbols, without an exception.
+	 * @param numBits the number of bits for the arithmetic coding range
+	 * @param in the bit input stream to read from
+	 * @param trusted whether to skip the frequency table wrapping and the invariant checks
+	 * @throws NullPointerException if the input steam is {@code null}
+	 * @throws IllegalArgumentException if stateSize is outside the range [1, 62]
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public ArithmeticDecoder(int numBits, BitInputStream in, boolean trusted) throws IOException {
+		super(numBits, trusted);
 		input = Objects.requireNonNull(in);
-		code = 0;
-		for (int i = 0; i < numStateBits; i++)
-			code = code << 1 | readCodeBit();
+		code = readCodeBits(numStateBits);
 	}
 	
 	
@@ -52,13 +71,17 @@ public final class ArithmeticDecoder extends ArithmeticCoderBase {
 	/**
 	 * Decodes the next symbol based on the specified frequency table and returns it.
 	 * Also updates this arithmetic coder's state and may read in some bits.
+	 * Unless this decoder is in trusted mode, the table is wrapped in a {@link CheckedFrequencyTable}.
 	 * @param freqs the frequency table to use
 	 * @return the next symbol
 	 * @throws NullPointerException if the frequency table is {@code null}
 	 * @throws IOException if an I/O exception occurred
 	 */
 	public int read(FrequencyTable freqs) throws IOException {
-		return read(new CheckedFrequencyTable(freqs));
+		if (trusted)
+			return decode(freqs);
+		else
+			return read(new CheckedFrequencyTable(freqs));
 	}
 	
 	
@@ -72,6 +95,106 @@ public final class ArithmeticDecoder extends ArithmeticCoderBase {
 	 * @throws IOException if an I/O exception occurred
 	 */
 	public int read(CheckedFrequencyTable freqs) throws IOException {
+		return decode(freqs);
+	}
+	
+	
+	/**
+	 * Decodes symbols based on the specified frequency table, which is not changed, and stores them into the
+	 * specified range of the byte array. Decoding stops early when a symbol outside the range [0, 255] (such as
+	 * an EOF symbol) is decoded; that symbol is consumed but not stored. Thus if the returned count is less than
+	 * {@code len}, then such a terminating symbol was read. This is equivalent to calling
+	 * {@link #read(FrequencyTable)} repeatedly, but the table is wrapped in a {@link CheckedFrequencyTable}
+	 * (or checked in trusted mode) at most once per call.
+	 * @param freqs the frequency table to use
+	 * @param b the array to store the decoded bytes into
+	 * @param off the index of the first byte to store
+	 * @param len the maximum number of bytes to store
+	 * @return the number of bytes stored, which is in the range [0, {@code len}]
+	 * @throws NullPointerException if the frequency table or array is {@code null}
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @throws IllegalArgumentException if the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public int readAll(FrequencyTable freqs, byte[] b, int off, int len) throws IOException {
+		ArithmeticEncoder.checkRange(b.length, off, len);
+		FrequencyTable table = freqs;
+		if (trusted)
+			checkTable(freqs);
+		else
+			table = new CheckedFrequencyTable(freqs);
+		for (int i = 0; i < len; i++) {
+			int symbol = decode(table);
+			if (symbol >>> 8 != 0)
+				return i;
+			b[off + i] = (byte)symbol;
+		}
+		return len;
+	}
+	
+	
+	/**
+	 * Decodes exactly {@code len} symbols based on the specified frequency table, which is not changed,
+	 * and stores them into the specified range of the symbol array. This is equivalent to calling
+	 * {@link #read(FrequencyTable)} repeatedly, but the table is wrapped in a
+	 * {@link CheckedFrequencyTable} (or checked in trusted mode) at most once per call.
+	 * @param freqs the frequency table to use
+	 * @param symbols the array to store the decoded symbols into
+	 * @param off the index of the first symbol to store
+	 * @param len the number of symbols to decode
+	 * @throws NullPointerException if the frequency table or array is {@code null}
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @throws IllegalArgumentException if the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void readAll(FrequencyTable freqs, int[] symbols, int off, int len) throws IOException {
+		ArithmeticEncoder.checkRange(symbols.length, off, len);
+		FrequencyTable table = freqs;
+		if (trusted)
+			checkTable(freqs);
+		else
+			table = new CheckedFrequencyTable(freqs);
+		for (int end = off + len; off < end; off++)
+			symbols[off] = decode(table);
+	}
+	
+	
+	/**
+	 * Decodes symbols based on the specified frequency table and stores them into the specified range of the
+	 * byte array, incrementing the frequency of each stored symbol in the table right after it is decoded.
+	 * Decoding stops early when a symbol outside the range [0, 255] is decoded, exactly like
+	 * {@link #readAll(FrequencyTable, byte[], int, int)}; the frequency of that symbol is not incremented.
+	 * In trusted mode, the table is checked before the first symbol, and the increments are trusted.
+	 * @param freqs the frequency table to use and update
+	 * @param b the array to store the decoded bytes into
+	 * @param off the index of the first byte to store
+	 * @param len the maximum number of bytes to store
+	 * @return the number of bytes stored, which is in the range [0, {@code len}]
+	 * @throws NullPointerException if the frequency table or array is {@code null}
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @throws IllegalArgumentException if the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public int readAllAdaptive(FrequencyTable freqs, byte[] b, int off, int len) throws IOException {
+		ArithmeticEncoder.checkRange(b.length, off, len);
+		FrequencyTable table = freqs;
+		if (trusted)
+			checkTable(freqs);
+		else
+			table = new CheckedFrequencyTable(freqs);
+		for (int i = 0; i < len; i++) {
+			int symbol = decode(table);
+			if (symbol >>> 8 != 0)
+				return i;
+			b[off + i] = (byte)symbol;
+			table.increment(symbol);
+		}
+		return len;
+	}
+	
+	
+	// Decodes the next symbol, checking the invariants only when this decoder is not in trusted mode.
+	private int decode(FrequencyTable freqs) throws IOException {
 		// Translate from coding range scale to frequency table scale
 		long total = freqs.getTotal();
 		if (total > maximumTotal)
@@ -79,51 +202,47 @@ public final class ArithmeticDecoder extends ArithmeticCoderBase {
 		long range = high - low + 1;
 		long offset = code - low;
 		long value = ((offset + 1) * total - 1) / range;
-		if (value * range / total > offset)
-			throw new AssertionError();
-		if (!(0 <= value && value < total))
-			throw new AssertionError();
-		
-		// A kind of binary search. Find highest symbol such that freqs.getLow(symbol) <= value.
-		int start = 0;
-		int end = freqs.getSymbolLimit();
-		while (end - start > 1) {
-			int middle = (start + end) >>> 1;
-			if (freqs.getLow(middle) > value)
-				end = middle;
-			else
-				start = middle;
+		if (!trusted) {
+			if (value * range / total > offset)
+				throw new AssertionError();
+			if (!(0 <= value && value < total))
+				throw new AssertionError();
 		}
-		if (start + 1 != end)
-			throw new AssertionError();
 		
-		int symbol = start;
-		if (!(freqs.getLow(symbol) * range / total <= offset && offset < freqs.getHigh(symbol) * range / total))
-			throw new AssertionError();
+		// Find highest symbol such that freqs.getLow(symbol) <= value, using the table's fastest search
+		int symbol = freqs.getSymbol((int)value);
+		if (!trusted) {
+			if (!(freqs.getLow(symbol) * range / total <= offset && offset < freqs.getHigh(symbol) * range / total))
+				throw new AssertionError();
+		}
 		update(freqs, symbol);
-		if (!(low <= code && code <= high))
+		if (!trusted && !(low <= code && code <= high))
 			throw new AssertionError("Code out of range");
 		return symbol;
 	}
 	
 	
-	protected void shift() throws IOException {
-		code = ((code << 1) & stateMask) | readCodeBit();
+	protected void shift(int numBits) throws IOException {
+		code = ((code << numBits) & stateMask) | readCodeBits(numBits);
 	}
 	
 	
-	protected void underflow() throws IOException {
-		code = (code & halfRange) | ((code << 1) & (stateMask >>> 1)) | readCodeBit();
+	protected void underflow(int count) throws IOException {
+		code = (code & halfRange) | ((code << count) & (stateMask >>> 1)) | readCodeBits(count);
 	}
 	
 	
-	// Returns the next bit (0 or 1) from the input stream. The end
-	// of stream is treated as an infinite number of trailing zeros.
-	private int readCodeBit() throws IOException {
-		int temp = input.read();
-		if (temp == -1)
-			temp = 0;
-		return temp;
+	// Returns the next numBits bits (in the range [0, 62]) from the input stream as an unsigned
+	// integer. The end of stream is treated as an infinite number of trailing zeros.
+	private long readCodeBits(int numBits) throws IOException {
+		long result = 0;
+		while (numBits > 0) {
+			int n = Math.min(numBits, 56);
+			result = result << n | input.peekBits(n);
+			input.skipBits(n);
+			numBits -= n;
+		}
+		return result;
 	}
 	
 }
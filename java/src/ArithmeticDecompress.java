@@ -12,16 +12,22 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 
 /**
  * Decompression application using static arithmetic coding.
  * <p>Usage: java ArithmeticDecompress InputFile OutputFile</p>
- * <p>This decompresses files generated by the "ArithmeticCompress" application.</p>
+ * <p>This decompresses files generated by the "ArithmeticCompress" application, in either of its formats.
+ * Either file name can be "-" to use standard input or output instead.</p>
  */
 public class ArithmeticDecompress {
 	
+	// Number of bytes decoded and written to the output stream at a time.
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	
 	public static void main(String[] args) throws IOException {
 		// Handle command line arguments
 		if (args.length != 2) {
@@ -29,40 +35,114 @@ public class ArithmeticDecompress {
 			System.exit(1);
 			return;
 		}
-		File inputFile  = new File(args[0]);
-		File outputFile = new File(args[1]);
+		InputStream inputStream = args[0].equals("-") ? System.in : new FileInputStream(new File(args[0]));
+		OutputStream outputStream = args[1].equals("-") ? System.out : new FileOutputStream(new File(args[1]));
 		
 		// Perform file decompression
-		try (BitInputStream in = new BitInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
-				OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+		try (BitInputStream in = new BitInputStream(new BufferedInputStream(inputStream));
+				OutputStream out = new BufferedOutputStream(outputStream)) {
+			decompress(in, out);
+		}
+	}
+	
+	
+	// Decompresses a stream in any format, which is told apart by the marker and version.
+	// To allow unit testing, this method is package-private instead of private.
+	static void decompress(BitInputStream in, OutputStream out) throws IOException {
+		long start = in.peekBits(40);
+		if (start >>> 8 == ArithmeticCompress.FORMAT_MARKER && (start & 0xFF) != ArithmeticCompress.VERSION_TWO_PASS) {
+			in.skipBits(40);
+			if ((start & 0xFF) != ArithmeticCompress.VERSION_ADAPTIVE_BLOCKS)
+				throw new IOException("Unsupported format version");
+			decompressBlocks(in, out);
+		} else {
 			FrequencyTable freqs = readFrequencies(in);
 			decompress(freqs, in, out);
 		}
 	}
 	
 	
+	// Reads the frequencies of the two-pass format, or of the original format that has no marker.
 	// To allow unit testing, this method is package-private instead of private.
 	static FrequencyTable readFrequencies(BitInputStream in) throws IOException {
 		int[] freqs = new int[257];
-		for (int i = 0; i < 256; i++)
-			freqs[i] = readInt(in, 32);
+		if (in.peekBits(40) == (ArithmeticCompress.FORMAT_MARKER << 8 | ArithmeticCompress.VERSION_TWO_PASS)) {
+			in.skipBits(40);
+			int[] counts = new int[256];
+			FrequencyHeader.read(in, counts);
+			System.arraycopy(counts, 0, freqs, 0, counts.length);
+		} else {
+			for (int i = 0; i < 256; i++)
+				freqs[i] = readInt(in, 32);
+		}
 		freqs[256] = 1;  // EOF symbol
-		return new SimpleFrequencyTable(freqs);
+		try {
+			return new StaticFrequencyTable(freqs);
+		} catch (ArithmeticException e) {
+			throw new IOException("Frequency total too large", e);
+		}
 	}
 	
 	
 	// To allow unit testing, this method is package-private instead of private.
 	static void decompress(FrequencyTable freqs, BitInputStream in, OutputStream out) throws IOException {
 		ArithmeticDecoder dec = new ArithmeticDecoder(32, in);
+		byte[] buf = new byte[BUFFER_SIZE];
 		while (true) {
-			int symbol = dec.read(freqs);
-			if (symbol == 256)  // EOF symbol
+			int n = dec.readAll(freqs, buf, 0, buf.length);
+			out.write(buf, 0, n);
+			if (n < buf.length)  // EOF symbol
 				break;
-			out.write(symbol);
 		}
 	}
 	
 	
+	// Decompresses the blocks of the single-pass format, after the marker and version. Each block has either its own
+	// frequencies or a selector of a recently used table, which is kept in the same order as by the compressor.
+	private static void decompressBlocks(BitInputStream in, OutputStream out) throws IOException {
+		ArithmeticDecoder dec = new ArithmeticDecoder(32, in);
+		byte[] buf = new byte[BUFFER_SIZE];
+		int[][] recentTables = new int[ArithmeticCompress.MAX_RECENT_TABLES][];
+		FrequencyHeader.AdaptiveModel headerModel = new FrequencyHeader.AdaptiveModel();
+		while (true) {
+			long length = readHalfWords(dec) & 0xFFFFFFFFL;
+			if (length == 0)  // The empty block ends the stream
+				break;
+			int[] freqs;
+			int selector = dec.read(ArithmeticCompress.TABLE_SELECTOR_FREQS);
+			if (selector == 0) {
+				freqs = new int[256];
+				FrequencyHeader.read(dec, freqs, headerModel);
+				ArithmeticCompress.moveToFront(recentTables, recentTables.length - 1, freqs);
+			} else {
+				freqs = recentTables[selector - 1];
+				if (freqs == null)
+					throw new IOException("Invalid block header");
+				ArithmeticCompress.moveToFront(recentTables, selector - 1, freqs);
+			}
+			long total = 0;
+			for (int freq : freqs)
+				total += freq;
+			if (length > ArithmeticCompress.MAX_BLOCK_SIZE || total > ArithmeticCompress.MAX_BLOCK_SIZE || total == 0)
+				throw new IOException("Invalid block header");
+			
+			FrequencyTable table = new StaticFrequencyTable(freqs);
+			for (long remain = length; remain > 0; ) {
+				int n = (int)Math.min(remain, buf.length);
+				dec.readAll(table, buf, 0, n);
+				out.write(buf, 0, n);
+				remain -= n;
+			}
+		}
+	}
+	
+	
+	// Reads a 32-bit number that was coded as two 16-bit halves.
+	private static int readHalfWords(ArithmeticDecoder dec) throws IOException {
+		return dec.read(ArithmeticCompress.HALF_WORD_FREQS) << 16 | dec.read(ArithmeticCompress.HALF_WORD_FREQS);
+	}
+	
+	
 	// Reads an unsigned integer of the given bit width from the given stream.
 	private static int readInt(BitInputStream in, int numBits) throws IOException {
 		if (!(0 <= numBits && numBits <= 32))
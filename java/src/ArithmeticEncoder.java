@@ -37,7 +37,27 @@ public final class ArithmeticEncoder extends ArithmeticCoderBase {
 	 * @throws IllegalArgumentException if stateSize is outside the range [1, 62]
 	 */
 	public ArithmeticEncoder(int numBits, BitOutputStream out) {
-		super(numBits);
+		this(numBits, out, false);
+	}
+	
+	
+	/**
+	 * Constructs an arithmetic coding encoder based on the specified bit output stream, in the specified mode.
+	 * In trusted mode, frequency tables are used directly instead of being wrapped in a new
+	 * {@link CheckedFrequencyTable} for each symbol, and the internal invariant checks are skipped.
+	 * The bulk methods ({@code writeAll} and {@code writeAllAdaptive}) still check each table once
+	 * at the start of each call, but {@link #write(FrequencyTable, int)} checks nothing except the
+	 * symbol's frequency and the table's total, so the caller guarantees that the tables it passes are
+	 * consistent, such as the implementations in this package. A table that is not may produce output
+	 * that cannot be decoded, without an exception. Trusted mode does not change the output.
+	 * @param numBits the number of bits for the arithmetic coding range
+	 * @param out the bit output stream to write to
+	 * @param trusted whether to skip the frequency table wrapping and the invariant checks
+	 * @throws NullPointerException if the output stream is {@code null}
+	 * @throws IllegalArgumentException if stateSize is outside the range [1, 62]
+	 */
+	public ArithmeticEncoder(int numBits, BitOutputStream out, boolean trusted) {
+		super(numBits, trusted);
 		output = Objects.requireNonNull(out);
 		numUnderflow = 0;
 	}
@@ -49,6 +69,7 @@ public final class ArithmeticEncoder extends ArithmeticCoderBase {
 	/**
 	 * Encodes the specified symbol based on the specified frequency table.
 	 * This updates this arithmetic coder's state and may write out some bits.
+	 * Unless this encoder is in trusted mode, the table is wrapped in a {@link CheckedFrequencyTable}.
 	 * @param freqs the frequency table to use
 	 * @param symbol the symbol to encode
 	 * @throws NullPointerException if the frequency table is {@code null}
@@ -57,7 +78,10 @@ public final class ArithmeticEncoder extends ArithmeticCoderBase {
 	 * @throws IOException if an I/O exception occurred
 	 */
 	public void write(FrequencyTable freqs, int symbol) throws IOException {
-		write(new CheckedFrequencyTable(freqs), symbol);
+		if (trusted)
+			update(freqs, symbol);
+		else
+			write(new CheckedFrequencyTable(freqs), symbol);
 	}
 	
 	
@@ -76,6 +100,90 @@ public final class ArithmeticEncoder extends ArithmeticCoderBase {
 	}
 	
 	
+	/**
+	 * Encodes the specified range of bytes as symbols (each in the range [0, 255]) based on the specified
+	 * frequency table, which is not changed. This is equivalent to calling {@link #write(FrequencyTable, int)}
+	 * on each byte, but the table is wrapped in a {@link CheckedFrequencyTable} (or checked in trusted mode)
+	 * at most once per call.
+	 * @param freqs the frequency table to use
+	 * @param b the array of bytes to encode
+	 * @param off the index of the first byte to encode
+	 * @param len the number of bytes to encode
+	 * @throws NullPointerException if the frequency table or array is {@code null}
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @throws IllegalArgumentException if some symbol has zero frequency
+	 * or the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void writeAll(FrequencyTable freqs, byte[] b, int off, int len) throws IOException {
+		checkRange(b.length, off, len);
+		FrequencyTable table = freqs;
+		if (trusted)
+			checkTable(freqs);
+		else
+			table = new CheckedFrequencyTable(freqs);
+		for (int end = off + len; off < end; off++)
+			update(table, b[off] & 0xFF);
+	}
+	
+	
+	/**
+	 * Encodes the specified range of symbols based on the specified frequency table, which is not changed.
+	 * This is equivalent to calling {@link #write(FrequencyTable, int)} on each symbol,
+	 * but the table is wrapped in a {@link CheckedFrequencyTable} (or checked in trusted mode) at most once per call.
+	 * @param freqs the frequency table to use
+	 * @param symbols the array of symbols to encode
+	 * @param off the index of the first symbol to encode
+	 * @param len the number of symbols to encode
+	 * @throws NullPointerException if the frequency table or array is {@code null}
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @throws IllegalArgumentException if some symbol has zero frequency
+	 * or the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void writeAll(FrequencyTable freqs, int[] symbols, int off, int len) throws IOException {
+		checkRange(symbols.length, off, len);
+		FrequencyTable table = freqs;
+		if (trusted)
+			checkTable(freqs);
+		else
+			table = new CheckedFrequencyTable(freqs);
+		for (int end = off + len; off < end; off++)
+			update(table, symbols[off]);
+	}
+	
+	
+	/**
+	 * Encodes the specified range of bytes as symbols (each in the range [0, 255]) based on the specified
+	 * frequency table, incrementing the frequency of each symbol in the table right after it is encoded.
+	 * This is equivalent to alternately calling {@link #write(FrequencyTable, int)} and
+	 * {@link FrequencyTable#increment(int)} on each byte, as an adaptive model does. In trusted mode,
+	 * the table is checked before the first byte, and the increments are trusted to keep it consistent.
+	 * @param freqs the frequency table to use and update
+	 * @param b the array of bytes to encode
+	 * @param off the index of the first byte to encode
+	 * @param len the number of bytes to encode
+	 * @throws NullPointerException if the frequency table or array is {@code null}
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 * @throws IllegalArgumentException if some symbol has zero frequency
+	 * or the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void writeAllAdaptive(FrequencyTable freqs, byte[] b, int off, int len) throws IOException {
+		checkRange(b.length, off, len);
+		FrequencyTable table = freqs;
+		if (trusted)
+			checkTable(freqs);
+		else
+			table = new CheckedFrequencyTable(freqs);
+		for (int end = off + len; off < end; off++) {
+			int symbol = b[off] & 0xFF;
+			update(table, symbol);
+			table.increment(symbol);
+		}
+	}
+	
+	
 	/**
 	 * Terminates the arithmetic coding by flushing any buffered bits, so that the output can be decoded properly.
 	 * It is important that this method must be called at the end of the each encoding process.
@@ -87,20 +195,38 @@ public final class ArithmeticEncoder extends ArithmeticCoderBase {
 	}
 	
 	
-	protected void shift() throws IOException {
-		int bit = (int)(low >>> (numStateBits - 1));
-		output.write(bit);
+	protected void shift(int numBits) throws IOException {
+		long bits = low >>> (numStateBits - numBits);
+		int bit = (int)(bits >>> (numBits - 1));
 		
-		// Write out the saved underflow bits
-		for (; numUnderflow > 0; numUnderflow--)
-			output.write(bit ^ 1);
+		// Write out the top bit followed by the saved underflow bits, which are a run of the
+		// opposite bit value. Usually this is a single multi-bit write; a long run is chunked.
+		int n = Math.min(numUnderflow, 63);
+		long ones = (1L << n) - 1;
+		output.writeBits(n + 1, bit == 1 ? 1L << n : ones);
+		numUnderflow -= n;
+		while (numUnderflow > 0) {
+			n = Math.min(numUnderflow, 64);
+			output.writeBits(n, bit == 1 ? 0 : -1L >>> (64 - n));
+			numUnderflow -= n;
+		}
+		
+		// Write out the rest of the shifted bits
+		output.writeBits(numBits - 1, bits & ((1L << (numBits - 1)) - 1));
 	}
 	
 	
-	protected void underflow() {
-		if (numUnderflow == Integer.MAX_VALUE)
+	protected void underflow(int count) {
+		if (numUnderflow > Integer.MAX_VALUE - count)
 			throw new ArithmeticException("Maximum underflow reached");
-		numUnderflow++;
+		numUnderflow += count;
+	}
+	
+	
+	// Throws an exception if the given range is not within an array of the given length.
+	static void checkRange(int arrayLength, int off, int len) {
+		if (off < 0 || len < 0 || off > arrayLength - len)
+			throw new IndexOutOfBoundsException();
 	}
 	
 }
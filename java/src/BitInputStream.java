@@ -16,19 +16,38 @@ import java.util.Objects;
  * A stream of bits that can be read. Because they come from an underlying byte stream,
  * the total number of bits is always a multiple of 8. The bits are read in big endian.
  * Mutable and not thread-safe.
+ * <p>Bytes are read from the underlying stream in large chunks into an internal byte array,
+ * and are moved into a 64-bit word from which bits are extracted. Thus this stream may read
+ * ahead of the bits consumed so far, up to the end of the underlying stream.</p>
  * @see BitOutputStream
  */
 public final class BitInputStream implements AutoCloseable {
 	
 	/*---- Fields ----*/
 	
+	// Size of the internal byte buffer.
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	
 	// The underlying byte stream to read from (not null).
 	private InputStream input;
 	
-	// Either in the range [0x00, 0xFF] if bits are available, or -1 if end of stream is reached.
-	private int currentByte;
+	// Bytes read from the underlying stream but not yet moved into 'currentBits' (not null).
+	private byte[] buffer;
+	
+	// Index of the next unused byte in the buffer, always between 0 and bufferLength (inclusive).
+	private int bufferIndex;
+	
+	// Number of valid bytes at the start of the buffer, always between 0 and buffer.length (inclusive).
+	private int bufferLength;
 	
-	// Number of remaining bits in the current byte, always between 0 and 7 (inclusive).
+	// Whether the underlying stream has reached its end (or this stream was closed).
+	private boolean isEndOfInput;
+	
+	// The available bits are the low 'numBitsRemaining' bits of this value, in big endian.
+	private long currentBits;
+	
+	// Number of available bits in currentBits, always between 0 and 64 (inclusive).
 	private int numBitsRemaining;
 	
 	
@@ -42,7 +61,11 @@ public final class BitInputStream implements AutoCloseable {
 	 */
 	public BitInputStream(InputStream in) {
 		input = Objects.requireNonNull(in);
-		currentByte = 0;
+		buffer = new byte[BUFFER_SIZE];
+		bufferIndex = 0;
+		bufferLength = 0;
+		isEndOfInput = false;
+		currentBits = 0;
 		numBitsRemaining = 0;
 	}
 	
@@ -57,18 +80,13 @@ public final class BitInputStream implements AutoCloseable {
 	 * @throws IOException if an I/O exception occurred
 	 */
 	public int read() throws IOException {
-		if (currentByte == -1)
-			return -1;
 		if (numBitsRemaining == 0) {
-			currentByte = input.read();
-			if (currentByte == -1)
+			refill();
+			if (numBitsRemaining == 0)
 				return -1;
-			numBitsRemaining = 8;
 		}
-		if (numBitsRemaining <= 0)
-			throw new AssertionError();
 		numBitsRemaining--;
-		return (currentByte >>> numBitsRemaining) & 1;
+		return (int)(currentBits >>> numBitsRemaining) & 1;
 	}
 	
 	
@@ -88,13 +106,105 @@ public final class BitInputStream implements AutoCloseable {
 	}
 	
 	
+	/**
+	 * Reads the specified number of bits from this stream and returns them as an unsigned integer,
+	 * where the first bit read is the most significant. The number of bits must be in the range [0, 64].
+	 * If fewer bits than requested remain, then an {@code EOFException} is thrown and this stream
+	 * is left at its end.
+	 * @param numBits the number of bits to read
+	 * @return the bits read, in the low {@code numBits} bits of the result
+	 * @throws IllegalArgumentException if the number of bits is out of range
+	 * @throws IOException if an I/O exception occurred
+	 * @throws EOFException if the end of stream is reached before all the bits are read
+	 */
+	public long readBits(int numBits) throws IOException {
+		if (numBits < 0 || numBits > 64)
+			throw new IllegalArgumentException("Number of bits out of range");
+		if (numBits > 56) {  // Split so that each part fits in a refilled buffer word
+			long high = readBits(numBits - 32);
+			return high << 32 | readBits(32);
+		}
+		if (numBitsRemaining < numBits) {
+			refill();
+			if (numBitsRemaining < numBits) {
+				numBitsRemaining = 0;
+				throw new EOFException();
+			}
+		}
+		numBitsRemaining -= numBits;
+		return (currentBits >>> numBitsRemaining) & ((1L << numBits) - 1);
+	}
+	
+	
+	/**
+	 * Returns the specified number of upcoming bits in this stream as an unsigned integer, without
+	 * consuming them. The number of bits must be in the range [0, 56]. Bits beyond the end of stream
+	 * are returned as zeros, which is convenient for decoders that treat the end as trailing zeros.
+	 * @param numBits the number of bits to look at
+	 * @return the upcoming bits, in the low {@code numBits} bits of the result
+	 * @throws IllegalArgumentException if the number of bits is out of range
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public long peekBits(int numBits) throws IOException {
+		if (numBits < 0 || numBits > 56)
+			throw new IllegalArgumentException("Number of bits out of range");
+		if (numBitsRemaining < numBits)
+			refill();
+		long mask = (1L << numBits) - 1;
+		if (numBitsRemaining >= numBits)
+			return (currentBits >>> (numBitsRemaining - numBits)) & mask;
+		else  // End of stream
+			return (currentBits << (numBits - numBitsRemaining)) & mask;
+	}
+	
+	
+	/**
+	 * Consumes the specified number of bits in this stream, which must be in the range [0, 56]. If fewer
+	 * bits remain, then this stream is left at its end without an exception. This is typically used after
+	 * {@link #peekBits(int)} to consume the bits that were actually used.
+	 * @param numBits the number of bits to skip
+	 * @throws IllegalArgumentException if the number of bits is out of range
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void skipBits(int numBits) throws IOException {
+		if (numBits < 0 || numBits > 56)
+			throw new IllegalArgumentException("Number of bits out of range");
+		if (numBitsRemaining < numBits)
+			refill();
+		numBitsRemaining -= Math.min(numBits, numBitsRemaining);
+	}
+	
+	
+	// Moves bytes from the buffer (refilling it from the underlying stream as needed) into currentBits
+	// until it holds more than 56 bits or the end of input is reached. Never loses any available bits.
+	private void refill() throws IOException {
+		while (numBitsRemaining <= 56) {
+			if (bufferIndex == bufferLength) {
+				if (isEndOfInput)
+					break;
+				int n = input.read(buffer);
+				if (n == -1) {
+					isEndOfInput = true;
+					break;
+				}
+				bufferIndex = 0;
+				bufferLength = n;
+			}
+			currentBits = (currentBits << 8) | (buffer[bufferIndex] & 0xFF);
+			bufferIndex++;
+			numBitsRemaining += 8;
+		}
+	}
+	
+	
 	/**
 	 * Closes this stream and the underlying input stream.
 	 * @throws IOException if an I/O exception occurred
 	 */
 	public void close() throws IOException {
 		input.close();
-		currentByte = -1;
+		isEndOfInput = true;
+		bufferIndex = bufferLength;
 		numBitsRemaining = 0;
 	}
 	
@@ -15,17 +15,31 @@ import java.util.Objects;
  * A stream where bits can be written to. Because they are written to an underlying
  * byte stream, the end of the stream is padded with 0's up to a multiple of 8 bits.
  * The bits are written in big endian. Mutable and not thread-safe.
+ * <p>Bits are accumulated in a 64-bit word and complete bytes are collected in an internal
+ * byte array, which is written to the underlying stream in large chunks. Thus the data
+ * only reaches the underlying stream when the array fills up, or upon flush or close.</p>
  * @see BitInputStream
  */
 public final class BitOutputStream implements AutoCloseable {
 	
 	/*---- Fields ----*/
 	
+	// Size of the internal byte buffer.
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	
 	// The underlying byte stream to write to (not null).
 	private OutputStream output;
 	
-	// The accumulated bits for the current byte, always in the range [0x00, 0xFF].
-	private int currentByte;
+	// Complete bytes that have not been written to the underlying stream yet (not null).
+	private byte[] buffer;
+	
+	// Number of valid bytes at the start of the buffer, always between 0 and buffer.length (inclusive).
+	private int bufferLength;
+	
+	// The accumulated bits for the current byte are the low 'numBitsFilled' bits of this
+	// value; the higher bits are leftovers of bytes already moved to the buffer.
+	private long currentBits;
 	
 	// Number of accumulated bits in the current byte, always between 0 and 7 (inclusive).
 	private int numBitsFilled;
@@ -41,7 +55,9 @@ public final class BitOutputStream implements AutoCloseable {
 	 */
 	public BitOutputStream(OutputStream out) {
 		output = Objects.requireNonNull(out);
-		currentByte = 0;
+		buffer = new byte[BUFFER_SIZE];
+		bufferLength = 0;
+		currentBits = 0;
 		numBitsFilled = 0;
 	}
 	
@@ -57,16 +73,58 @@ public final class BitOutputStream implements AutoCloseable {
 	public void write(int b) throws IOException {
 		if (b != 0 && b != 1)
 			throw new IllegalArgumentException("Argument must be 0 or 1");
-		currentByte = (currentByte << 1) | b;
-		numBitsFilled++;
-		if (numBitsFilled == 8) {
-			output.write(currentByte);
-			currentByte = 0;
-			numBitsFilled = 0;
+		appendBits(1, b);
+	}
+	
+	
+	/**
+	 * Writes the specified number of low-order bits of the specified value to the stream, most significant
+	 * bit first. The number of bits must be in the range [0, 64], and the value must fit in that many bits.
+	 * @param numBits the number of bits to write
+	 * @param value the bits to write, as an unsigned integer
+	 * @throws IllegalArgumentException if the number of bits is out of range
+	 * or the value has any bit set at or above position {@code numBits}
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void writeBits(int numBits, long value) throws IOException {
+		if (numBits < 0 || numBits > 64)
+			throw new IllegalArgumentException("Number of bits out of range");
+		if (numBits < 64 && value >>> numBits != 0)
+			throw new IllegalArgumentException("Value out of range");
+		if (numBits > 56) {  // Split so that the 64-bit accumulator cannot overflow
+			appendBits(numBits - 32, value >>> 32);
+			numBits = 32;
+			value &= 0xFFFFFFFFL;
+		}
+		appendBits(numBits, value);
+	}
+	
+	
+	// Appends 0 to 56 bits to the accumulator, and moves all complete bytes to the buffer.
+	private void appendBits(int numBits, long value) throws IOException {
+		currentBits = (currentBits << numBits) | value;
+		numBitsFilled += numBits;
+		while (numBitsFilled >= 8) {
+			if (bufferLength == buffer.length)
+				writeBuffer();
+			numBitsFilled -= 8;
+			buffer[bufferLength] = (byte)(currentBits >>> numBitsFilled);
+			bufferLength++;
 		}
 	}
 	
 	
+	/**
+	 * Writes all the complete bytes in this stream to the underlying output stream, and flushes
+	 * the underlying stream. Any bits of an incomplete byte remain held in this stream.
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void flush() throws IOException {
+		writeBuffer();
+		output.flush();
+	}
+	
+	
 	/**
 	 * Closes this stream and the underlying output stream. If called when this
 	 * bit stream is not at a byte boundary, then the minimum number of "0" bits
@@ -74,9 +132,17 @@ public final class BitOutputStream implements AutoCloseable {
 	 * @throws IOException if an I/O exception occurred
 	 */
 	public void close() throws IOException {
-		while (numBitsFilled != 0)
-			write(0);
+		if (numBitsFilled != 0)
+			appendBits(8 - numBitsFilled, 0);
+		writeBuffer();
 		output.close();
 	}
 	
+	
+	// Writes the buffered bytes to the underlying stream and empties the buffer.
+	private void writeBuffer() throws IOException {
+		output.write(buffer, 0, bufferLength);
+		bufferLength = 0;
+	}
+	
 }
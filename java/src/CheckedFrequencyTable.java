@@ -87,6 +87,21 @@ public final class CheckedFrequencyTable implements FrequencyTable {
 	}
 	
 	
+	public int getSymbol(int value) {
+		if (0 <= value && value < freqTable.getTotal()) {
+			int result = freqTable.getSymbol(value);
+			if (!isSymbolInRange(result))
+				throw new AssertionError("Symbol out of range");
+			if (!(freqTable.getLow(result) <= value && value < freqTable.getHigh(result)))
+				throw new AssertionError("Symbol does not contain value");
+			return result;
+		} else {
+			freqTable.getSymbol(value);
+			throw new AssertionError("IllegalArgumentException expected");
+		}
+	}
+	
+	
 	public String toString() {
 		return "CheckedFrequencyTable (" + freqTable.toString() + ")";
 	}
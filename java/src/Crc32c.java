@@ -0,0 +1,104 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.zip.Checksum;
+
+
+/**
+ * Computes the CRC-32C (Castagnoli) checksum of the bytes given to it, which is the checksum of iSCSI, ext4
+ * and many storage formats. It detects more error patterns than the CRC-32 of zip files. This is a plain
+ * table-driven implementation that processes one byte at a time.
+ */
+final class Crc32c implements Checksum {
+	
+	/*---- Constants ----*/
+	
+	// The bit-reversed generator polynomial.
+	private static final int POLYNOMIAL = 0x82F63B78;
+	
+	// The CRC of each byte value, for updating the CRC one byte at a time.
+	private static final int[] TABLE = new int[256];
+	
+	static {
+		for (int i = 0; i < TABLE.length; i++) {
+			int crc = i;
+			for (int j = 0; j < 8; j++)
+				crc = (crc >>> 1) ^ ((crc & 1) * POLYNOMIAL);
+			TABLE[i] = crc;
+		}
+	}
+	
+	
+	
+	/*---- Fields ----*/
+	
+	// The complement of the CRC of the bytes so far.
+	private int state = ~0;
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Updates the checksum with the specified byte.
+	 * @param b the byte to add, in the low 8 bits
+	 */
+	public void update(int b) {
+		state = (state >>> 8) ^ TABLE[(state ^ b) & 0xFF];
+	}
+	
+	
+	/**
+	 * Updates the checksum with the specified range of bytes.
+	 * @param b the array of bytes
+	 * @param off the index of the first byte to add
+	 * @param len the number of bytes to add
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 */
+	public void update(byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || off > b.length - len)
+			throw new IndexOutOfBoundsException();
+		int crc = state;
+		for (int end = off + len; off < end; off++)
+			crc = (crc >>> 8) ^ TABLE[(crc ^ b[off]) & 0xFF];
+		state = crc;
+	}
+	
+	
+	/**
+	 * Returns the checksum of the bytes so far.
+	 * @return the checksum, in the range [0, 2^32)
+	 */
+	public long getValue() {
+		return ~state & 0xFFFFFFFFL;
+	}
+	
+	
+	/**
+	 * Resets the checksum to that of no bytes.
+	 */
+	public void reset() {
+		state = ~0;
+	}
+	
+	
+	/**
+	 * Returns the checksum of the specified range of bytes.
+	 * @param b the array of bytes
+	 * @param off the index of the first byte
+	 * @param len the number of bytes
+	 * @return the checksum as an int, which is the unsigned value of {@link #getValue()} reinterpreted
+	 * @throws IndexOutOfBoundsException if the range is out of bounds
+	 */
+	public static int compute(byte[] b, int off, int len) {
+		Crc32c crc = new Crc32c();
+		crc.update(b, off, len);
+		return (int)crc.getValue();
+	}
+	
+}
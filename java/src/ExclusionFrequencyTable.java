@@ -0,0 +1,312 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.Objects;
+
+
+/**
+ * A view of another frequency table in which a set of excluded symbols have zero frequency. This is
+ * the symbol exclusion technique of PPM, where symbols that were already ruled out by a higher-order
+ * context are removed from the lower-order contexts. The excluded set is kept across changes of the
+ * underlying table, so one instance can be reused for every context that a symbol is coded in, without
+ * copying any table. Each query costs the underlying query plus O(log m) or O(m) for m excluded symbols.
+ * <p>Optionally, the frequency of one symbol can be replaced too, which lets a PPM model supply an
+ * escape frequency that is computed rather than stored in the context's table. The other frequencies
+ * can also be multiplied by a scale factor, to give the replaced frequency a finer resolution.</p>
+ * <p>The view is read-only, but it reflects changes made to the underlying table
+ * after {@link #setBase(FrequencyTable)} is called only if that method is called again.</p>
+ */
+public final class ExclusionFrequencyTable implements FrequencyTable {
+	
+	/*---- Fields ----*/
+	
+	// The underlying frequency table (not null).
+	private FrequencyTable base;
+	
+	// excluded[i] indicates whether symbol i is excluded. Its length is the symbol limit.
+	private boolean[] excluded;
+	
+	// The excluded symbols in ascending order, at indexes [0, numExcluded).
+	private int[] excludedSymbols;
+	private int numExcluded;
+	
+	// excludedPrefix[i] is the sum of the base frequencies of excludedSymbols[0 .. i), for i in [0, numExcluded].
+	private int[] excludedPrefix;
+	
+	// The symbol whose frequency is replaced, or -1 if none. It is never excluded.
+	private int replacedSymbol;
+	
+	// The frequency of the replaced symbol in this view, and that frequency minus its base frequency.
+	private int replacedFreq;
+	private int replacedDelta;
+	
+	// The factor that the frequencies of all the symbols other than the replaced one are multiplied by, at least 1.
+	private int scale;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs an exclusion view of the specified frequency table, with no symbols excluded.
+	 * @param freqs the underlying frequency table
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 */
+	public ExclusionFrequencyTable(FrequencyTable freqs) {
+		base = Objects.requireNonNull(freqs);
+		int numSym = freqs.getSymbolLimit();
+		excluded = new boolean[numSym];
+		excludedSymbols = new int[numSym];
+		numExcluded = 0;
+		excludedPrefix = new int[numSym + 1];
+		replacedSymbol = -1;
+		scale = 1;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Changes the underlying frequency table, keeping the set of excluded symbols.
+	 * @param freqs the new underlying frequency table, which must have the same symbol limit
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 * @throws IllegalArgumentException if the symbol limit differs
+	 */
+	public void setBase(FrequencyTable freqs) {
+		if (freqs.getSymbolLimit() != excluded.length)
+			throw new IllegalArgumentException("Symbol limit mismatch");
+		base = freqs;
+		replacedSymbol = -1;
+		scale = 1;
+		for (int i = 0; i < numExcluded; i++)
+			excludedPrefix[i + 1] = excludedPrefix[i] + freqs.get(excludedSymbols[i]);
+	}
+	
+	
+	/**
+	 * Changes the underlying frequency table, keeping the set of excluded symbols,
+	 * and makes this view report the specified frequency for the specified symbol.
+	 * @param freqs the new underlying frequency table, which must have the same symbol limit
+	 * @param symbol the symbol whose frequency to replace, which must not be excluded
+	 * @param freq the frequency of the symbol in this view, which must be non-negative
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 * @throws IllegalArgumentException if the symbol limit differs, the symbol
+	 * is out of range or excluded, or the frequency is negative
+	 * @throws ArithmeticException if the total of this view exceeds {@code Integer.MAX_VALUE}
+	 */
+	public void setBase(FrequencyTable freqs, int symbol, int freq) {
+		setBase(freqs, symbol, freq, 1);
+	}
+	
+	
+	/**
+	 * Changes the underlying frequency table, keeping the set of excluded symbols, makes this view report
+	 * the specified frequency for the specified symbol, and multiplies every other frequency by the scale.
+	 * @param freqs the new underlying frequency table, which must have the same symbol limit
+	 * @param symbol the symbol whose frequency to replace, which must not be excluded
+	 * @param freq the frequency of the symbol in this view, which must be non-negative
+	 * @param scale the factor for the frequencies of the other symbols, which must be positive
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 * @throws IllegalArgumentException if the symbol limit differs, the symbol is
+	 * out of range or excluded, the frequency is negative, or the scale is not positive
+	 * @throws ArithmeticException if the total of this view exceeds {@code Integer.MAX_VALUE}
+	 */
+	public void setBase(FrequencyTable freqs, int symbol, int freq, int scale) {
+		checkSymbol(symbol);
+		if (excluded[symbol])
+			throw new IllegalArgumentException("Replaced symbol is excluded");
+		if (freq < 0 || scale < 1)
+			throw new IllegalArgumentException();
+		setBase(freqs);
+		int others = Math.multiplyExact(freqs.getTotal() - excludedPrefix[numExcluded] - freqs.get(symbol), scale);
+		Math.addExact(others, freq);  // Check that the total fits
+		replacedSymbol = symbol;
+		replacedFreq = freq;
+		replacedDelta = freq - freqs.get(symbol) * scale;
+		this.scale = scale;
+	}
+	
+	
+	/**
+	 * Adds the specified symbol to the excluded set, doing nothing if it is already excluded.
+	 * @param symbol the symbol to exclude
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()},
+	 * or the symbol's frequency is currently replaced
+	 */
+	public void exclude(int symbol) {
+		checkSymbol(symbol);
+		if (excluded[symbol])
+			return;
+		if (symbol == replacedSymbol)
+			throw new IllegalArgumentException("Symbol is replaced");
+		excluded[symbol] = true;
+		int i = numExcluded;
+		for (; i > 0 && excludedSymbols[i - 1] > symbol; i--)
+			excludedSymbols[i] = excludedSymbols[i - 1];
+		excludedSymbols[i] = symbol;
+		numExcluded++;
+		for (; i < numExcluded; i++)
+			excludedPrefix[i + 1] = excludedPrefix[i] + base.get(excludedSymbols[i]);
+	}
+	
+	
+	/**
+	 * Tests whether the specified symbol is excluded.
+	 * @param symbol the symbol to query
+	 * @return whether the symbol is excluded
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public boolean isExcluded(int symbol) {
+		checkSymbol(symbol);
+		return excluded[symbol];
+	}
+	
+	
+	/**
+	 * Returns the number of excluded symbols.
+	 * @return the size of the excluded set
+	 */
+	public int getNumExcluded() {
+		return numExcluded;
+	}
+	
+	
+	/**
+	 * Removes all symbols from the excluded set.
+	 */
+	public void clearExclusions() {
+		for (int i = 0; i < numExcluded; i++)
+			excluded[excludedSymbols[i]] = false;
+		numExcluded = 0;
+	}
+	
+	
+	public int getSymbolLimit() {
+		return excluded.length;
+	}
+	
+	
+	public int get(int symbol) {
+		checkSymbol(symbol);
+		if (excluded[symbol])
+			return 0;
+		else if (symbol == replacedSymbol)
+			return replacedFreq;
+		else
+			return base.get(symbol) * scale;
+	}
+	
+	
+	public int getTotal() {
+		int result = (base.getTotal() - excludedPrefix[numExcluded]) * scale;
+		if (replacedSymbol != -1)
+			result += replacedDelta;
+		return result;
+	}
+	
+	
+	public int getLow(int symbol) {
+		int result = (base.getLow(symbol) - excludedPrefix[countExcludedBelow(symbol)]) * scale;
+		if (replacedSymbol != -1 && symbol > replacedSymbol)
+			result += replacedDelta;
+		return result;
+	}
+	
+	
+	public int getHigh(int symbol) {
+		return getLow(symbol) + get(symbol);
+	}
+	
+	
+	/**
+	 * Returns the symbol whose cumulative frequency range contains the specified value. The value is mapped to the
+	 * underlying table by undoing the replacement and scaling, and adding back the frequencies of the excluded symbols
+	 * below it. Then the underlying table's search is used, so no cumulative frequencies are rebuilt.
+	 * @param value the cumulative frequency value to query
+	 * @return the symbol whose range [getLow(symbol), getHigh(symbol)) contains {@code value}
+	 * @throws IllegalArgumentException if {@code value} &lt; 0 or {@code value} &ge; {@code getTotal()}
+	 */
+	public int getSymbol(int value) {
+		if (!(0 <= value && value < getTotal()))
+			throw new IllegalArgumentException("Value out of range");
+		if (replacedSymbol != -1) {
+			int low = getLow(replacedSymbol);
+			if (value >= low) {
+				if (value < low + replacedFreq)
+					return replacedSymbol;
+				value -= replacedDelta;  // Now the value is past the replaced symbol's range in the base table
+			}
+		}
+		value /= scale;
+		// An excluded symbol is below the target if its position in this view is at most the value
+		int i = 0;
+		for (; i < numExcluded; i++) {
+			if (base.getLow(excludedSymbols[i]) - excludedPrefix[i] > value)
+				break;
+		}
+		return base.getSymbol(value + excludedPrefix[i]);
+	}
+	
+	
+	/**
+	 * Unsupported operation, because this frequency table is a read-only view.
+	 * @param symbol ignored
+	 * @param freq ignored
+	 * @throws UnsupportedOperationException because this frequency table is a read-only view
+	 */
+	public void set(int symbol, int freq) {
+		throw new UnsupportedOperationException();
+	}
+	
+	
+	/**
+	 * Unsupported operation, because this frequency table is a read-only view.
+	 * @param symbol ignored
+	 * @throws UnsupportedOperationException because this frequency table is a read-only view
+	 */
+	public void increment(int symbol) {
+		throw new UnsupportedOperationException();
+	}
+	
+	
+	// Returns the number of excluded symbols strictly less than the given symbol, by binary search.
+	private int countExcludedBelow(int symbol) {
+		int start = 0;
+		int end = numExcluded;
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+			if (excludedSymbols[middle] < symbol)
+				start = middle + 1;
+			else
+				end = middle;
+		}
+		return start;
+	}
+	
+	
+	// Returns silently if 0 <= symbol < getSymbolLimit(), otherwise throws an exception.
+	private void checkSymbol(int symbol) {
+		if (!(0 <= symbol && symbol < excluded.length))
+			throw new IllegalArgumentException("Symbol out of range");
+	}
+	
+	
+	/**
+	 * Returns a string representation of this frequency table,
+	 * useful for debugging only, and the format is subject to change.
+	 * @return a string representation of this frequency table
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < excluded.length; i++)
+			sb.append(String.format("%d\t%d%n", i, get(i)));
+		return sb.toString();
+	}
+	
+}
@@ -0,0 +1,247 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.Objects;
+
+
+/**
+ * A mutable table of symbol frequencies, backed by a Fenwick tree (binary indexed tree). The number of symbols
+ * cannot be changed after construction. Unlike {@link SimpleFrequencyTable}, which recomputes all the cumulative
+ * frequencies after a change, every query and update here takes O(log n) time for n symbols. This makes it
+ * suitable for adaptive models, which alternate between coding a symbol and incrementing its frequency.
+ */
+public final class FenwickFrequencyTable implements FrequencyTable {
+	
+	/*---- Fields ----*/
+	
+	// The frequency for each symbol. Its length is at least 1, and each element is non-negative.
+	private int[] frequencies;
+	
+	// The Fenwick tree over 'frequencies', using 1-based indexing (element 0 is unused). For each
+	// i in [1, frequencies.length], tree[i] is the sum of 'frequencies' from i - lowestOneBit(i)
+	// (inclusive) to i (exclusive).
+	private int[] tree;
+	
+	// The highest power of 2 that is at most frequencies.length, used as the first step of a search.
+	private int topStep;
+	
+	// Always equal to the sum of 'frequencies'.
+	private int total;
+	
+	
+	
+	/*---- Constructors ----*/
+	
+	/**
+	 * Constructs a frequency table from the specified array of symbol frequencies. There must be at least
+	 * 1 symbol, no symbol has a negative frequency, and the total must not exceed {@code Integer.MAX_VALUE}.
+	 * @param freqs the array of symbol frequencies
+	 * @throws NullPointerException if the array is {@code null}
+	 * @throws IllegalArgumentException if {@code freqs.length} &lt; 1,
+	 * {@code freqs.length} = {@code Integer.MAX_VALUE}, or any element {@code freqs[i]} &lt; 0
+	 * @throws ArithmeticException if the total of {@code freqs} exceeds {@code Integer.MAX_VALUE}
+	 */
+	public FenwickFrequencyTable(int[] freqs) {
+		this(new SimpleFrequencyTable(freqs));
+	}
+	
+	
+	/**
+	 * Constructs a frequency table by copying the specified frequency table.
+	 * @param freqs the frequency table to copy
+	 * @throws NullPointerException if {@code freqs} is {@code null}
+	 * @throws IllegalArgumentException if {@code freqs.getSymbolLimit()} &lt; 1
+	 * or any element {@code freqs.get(i)} &lt; 0
+	 * @throws ArithmeticException if the total of all {@code freqs} elements exceeds {@code Integer.MAX_VALUE}
+	 */
+	public FenwickFrequencyTable(FrequencyTable freqs) {
+		Objects.requireNonNull(freqs);
+		int numSym = freqs.getSymbolLimit();
+		if (numSym < 1)
+			throw new IllegalArgumentException("At least 1 symbol needed");
+		if (numSym > Integer.MAX_VALUE - 1)
+			throw new IllegalArgumentException("Too many symbols");
+		
+		frequencies = new int[numSym];
+		tree = new int[numSym + 1];
+		total = 0;
+		for (int i = 0; i < numSym; i++) {
+			int x = freqs.get(i);
+			if (x < 0)
+				throw new IllegalArgumentException("Negative frequency");
+			frequencies[i] = x;
+			total = Math.addExact(x, total);
+			tree[i + 1] = x;
+		}
+		// Build the tree in linear time by pushing each partial sum up to its parent
+		for (int i = 1; i <= numSym; i++) {
+			int parent = i + (i & -i);
+			if (parent <= numSym)
+				tree[parent] += tree[i];
+		}
+		topStep = Integer.highestOneBit(numSym);
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the number of symbols in this frequency table, which is at least 1.
+	 * @return the number of symbols in this frequency table
+	 */
+	public int getSymbolLimit() {
+		return frequencies.length;
+	}
+	
+	
+	/**
+	 * Returns the frequency of the specified symbol. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the frequency of the specified symbol
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int get(int symbol) {
+		checkSymbol(symbol);
+		return frequencies[symbol];
+	}
+	
+	
+	/**
+	 * Sets the frequency of the specified symbol to the specified value. The frequency value
+	 * must be at least 0. If an exception is thrown, then the state is left unchanged.
+	 * @param symbol the symbol to set
+	 * @param freq the frequency value to set
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 * @throws ArithmeticException if this set request would cause the total to exceed {@code Integer.MAX_VALUE}
+	 */
+	public void set(int symbol, int freq) {
+		checkSymbol(symbol);
+		if (freq < 0)
+			throw new IllegalArgumentException("Negative frequency");
+		
+		int temp = total - frequencies[symbol];
+		if (temp < 0)
+			throw new AssertionError();
+		total = Math.addExact(temp, freq);
+		add(symbol, freq - frequencies[symbol]);
+		frequencies[symbol] = freq;
+	}
+	
+	
+	/**
+	 * Increments the frequency of the specified symbol.
+	 * @param symbol the symbol whose frequency to increment
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public void increment(int symbol) {
+		checkSymbol(symbol);
+		if (frequencies[symbol] == Integer.MAX_VALUE)
+			throw new ArithmeticException("Arithmetic overflow");
+		total = Math.addExact(total, 1);
+		frequencies[symbol]++;
+		add(symbol, 1);
+	}
+	
+	
+	/**
+	 * Returns the total of all symbol frequencies. The returned value is at
+	 * least 0 and is always equal to {@code getHigh(getSymbolLimit() - 1)}.
+	 * @return the total of all symbol frequencies
+	 */
+	public int getTotal() {
+		return total;
+	}
+	
+	
+	/**
+	 * Returns the sum of the frequencies of all the symbols strictly
+	 * below the specified symbol value. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the sum of the frequencies of all the symbols below {@code symbol}
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int getLow(int symbol) {
+		checkSymbol(symbol);
+		return prefixSum(symbol);
+	}
+	
+	
+	/**
+	 * Returns the sum of the frequencies of the specified symbol
+	 * and all the symbols below. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the sum of the frequencies of {@code symbol} and all symbols below
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int getHigh(int symbol) {
+		checkSymbol(symbol);
+		return prefixSum(symbol + 1);
+	}
+	
+	
+	/**
+	 * Returns the symbol whose cumulative frequency range contains the specified value, which is the
+	 * highest symbol such that {@code getLow(symbol)} &le; {@code value}. This descends the Fenwick
+	 * tree in O(log n) time, instead of performing a binary search over {@code getLow()} calls.
+	 * @param value the cumulative frequency value to query
+	 * @return the symbol whose range [getLow(symbol), getHigh(symbol)) contains {@code value}
+	 * @throws IllegalArgumentException if {@code value} &lt; 0 or {@code value} &ge; {@code getTotal()}
+	 */
+	public int getSymbol(int value) {
+		if (!(0 <= value && value < total))
+			throw new IllegalArgumentException("Value out of range");
+		// Find the highest count such that the sum of the first 'count' frequencies is at most the value
+		int count = 0;
+		for (int step = topStep; step > 0; step >>>= 1) {
+			int next = count + step;
+			if (next <= frequencies.length && tree[next] <= value) {
+				count = next;
+				value -= tree[next];
+			}
+		}
+		return count;
+	}
+	
+	
+	// Returns the sum of 'frequencies' from 0 (inclusive) to end (exclusive).
+	private int prefixSum(int end) {
+		int result = 0;
+		for (int i = end; i > 0; i &= i - 1)
+			result += tree[i];
+		return result;
+	}
+	
+	
+	// Adds the given delta to the frequency of the given symbol in the tree.
+	private void add(int symbol, int delta) {
+		for (int i = symbol + 1; i <= frequencies.length; i += i & -i)
+			tree[i] += delta;
+	}
+	
+	
+	// Returns silently if 0 <= symbol < frequencies.length, otherwise throws an exception.
+	private void checkSymbol(int symbol) {
+		if (!(0 <= symbol && symbol < frequencies.length))
+			throw new IllegalArgumentException("Symbol out of range");
+	}
+	
+	
+	/**
+	 * Returns a string representation of this frequency table,
+	 * useful for debugging only, and the format is subject to change.
+	 * @return a string representation of this frequency table
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < frequencies.length; i++)
+			sb.append(String.format("%d\t%d%n", i, frequencies[i]));
+		return sb.toString();
+	}
+	
+}
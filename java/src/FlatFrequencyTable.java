@@ -94,6 +94,19 @@ public final class FlatFrequencyTable implements FrequencyTable {
 	}
 	
 	
+	/**
+	 * Returns the symbol whose cumulative frequency range contains the
+	 * specified value, which is equal to {@code value}. Runs in constant time.
+	 * @param value the cumulative frequency value to query
+	 * @return the symbol whose range contains {@code value}, which is {@code value}
+	 * @throws IllegalArgumentException if {@code value} &lt; 0 or {@code value} &ge; {@code getTotal()}
+	 */
+	public int getSymbol(int value) {
+		checkSymbol(value);
+		return value;
+	}
+	
+	
 	// Returns silently if 0 <= symbol < numSymbols, otherwise throws an exception.
 	private void checkSymbol(int symbol) {
 		if (!(0 <= symbol && symbol < numSymbols))
@@ -0,0 +1,39 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+
+/**
+ * The coder that compresses every block of a framed file (see {@link FramedCompress}).
+ * The coder is recorded in the file header by its ordinal, which must never change.
+ */
+enum FramedCoder {
+	
+	/** Static arithmetic coding in the single-pass block format of {@link ArithmeticCompress}. */
+	STATIC,
+	
+	/** Adaptive arithmetic coding with the default rescaling limit of {@link AdaptiveArithmeticCompress}. */
+	ADAPTIVE,
+	
+	/** PPM with the default options of {@link PpmCompress}, or primed with the model file of the framed file. */
+	PPM;
+	
+	
+	/**
+	 * Returns the coder with the specified ordinal, as stored in a file header.
+	 * @param ordinal the ordinal to query
+	 * @return the coder with the ordinal (not {@code null})
+	 * @throws IllegalArgumentException if the ordinal is out of range
+	 */
+	public static FramedCoder fromOrdinal(int ordinal) {
+		FramedCoder[] values = values();
+		if (!(0 <= ordinal && ordinal < values.length))
+			throw new IllegalArgumentException("Unknown coder");
+		return values[ordinal];
+	}
+	
+}
@@ -0,0 +1,278 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CheckedOutputStream;
+
+
+/**
+ * Compression application that wraps one of the other coders in a framed container format.
+ * <p>Usage: java FramedCompress [-coder STATIC|ADAPTIVE|PPM] [-block Bytes] [-model ModelFile] InputFile OutputFile</p>
+ * <p>Then use the corresponding "FramedDecompress" application to recreate the original input file.
+ * Either file name can be "-" to use standard input or output instead.</p>
+ * <p>The input is split into blocks (1 MiB by default), and each block is compressed on its own into a complete
+ * stream of the coder (static arithmetic coding by default), so that the blocks can be decoded independently and
+ * in any order. Every block is checked with CRC-32C checksums, so that corrupt input fails before it is decoded,
+ * and wrong output fails before it is written. With "-model", the coder is PPM primed with a model file made by
+ * the "PpmTrain" application, and the decompressor needs the same file.</p>
+ * <p>The file format is byte-aligned, and its numbers are big-endian:</p>
+ * <ul>
+ *   <li>The header: the magic number 0x41434652 ("ACFR"), the format version (1 byte, currently 1), the coder
+ *   ordinal (1 byte, see {@link FramedCoder}), the PPM model id (8 bytes, or 0 if there is no model file),
+ *   the block size (4 bytes), and the CRC-32C of the header up to here (4 bytes)</li>
+ *   <li>The blocks, each being a block entry followed by its compressed bytes. A block entry consists of
+ *   the compressed size, the uncompressed size, the CRC-32C of the compressed bytes, and the CRC-32C of the
+ *   uncompressed bytes (4 bytes each). Every block except the last has the block size uncompressed.</li>
+ *   <li>A compressed size of 0 (4 bytes), which ends the blocks</li>
+ *   <li>The block index: the number of blocks (4 bytes), the same block entries again,
+ *   and the CRC-32C of the index up to here (4 bytes)</li>
+ *   <li>The trailer: the offset of the block index in the file (8 bytes), and the magic number again</li>
+ * </ul>
+ * <p>A decompressor that reads the file in order needs neither the index nor seeking, while a reader that can seek
+ * reads the trailer and the index to find any block directly (see {@link FramedDecompress#readIndex}).</p>
+ */
+public final class FramedCompress {
+	
+	/*---- Constants ----*/
+	
+	static final int MAGIC = 0x41434652;
+	
+	static final int VERSION = 1;
+	
+	// The number of bytes in the header, before the first block.
+	static final int HEADER_SIZE = 22;
+	
+	// The number of bytes in the trailer, at the end of the file.
+	static final int TRAILER_SIZE = 12;
+	
+	static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	
+	// The largest block size, which keeps every block and its compressed bytes in memory easily.
+	static final int MAX_BLOCK_SIZE = 1 << 26;
+	
+	
+	
+	/*---- Main application ----*/
+	
+	public static void main(String[] args) throws IOException {
+		// Handle command line arguments
+		FramedCoder coder = FramedCoder.STATIC;
+		int blockSize = DEFAULT_BLOCK_SIZE;
+		PpmModelImage image = null;
+		int i = 0;
+		for (; i < args.length - 2; i++) {
+			String arg = args[i];
+			if (i + 1 < args.length - 2 && arg.equals("-coder"))
+				coder = FramedCoder.valueOf(args[++i]);
+			else if (i + 1 < args.length - 2 && arg.equals("-block"))
+				blockSize = Integer.parseInt(args[++i]);
+			else if (i + 1 < args.length - 2 && arg.equals("-model")) {
+				image = PpmModelImage.map(new File(args[++i]));
+				coder = FramedCoder.PPM;
+			} else
+				break;
+		}
+		args = Arrays.copyOfRange(args, i, args.length);
+		if (args.length != 2 || image != null && coder != FramedCoder.PPM) {
+			System.err.println("Usage: java FramedCompress [-coder STATIC|ADAPTIVE|PPM] [-block Bytes] [-model ModelFile] InputFile OutputFile");
+			System.exit(1);
+			return;
+		}
+		InputStream inputStream = args[0].equals("-") ? System.in : new FileInputStream(args[0]);
+		OutputStream outputStream = args[1].equals("-") ? System.out : new FileOutputStream(args[1]);
+		
+		// Perform file compression
+		try (InputStream in = new BufferedInputStream(inputStream);
+				OutputStream out = new BufferedOutputStream(outputStream)) {
+			compress(in, out, coder, blockSize, image);
+		}
+	}
+	
+	
+	
+	/*---- Static functions ----*/
+	
+	// Compresses the given input into a framed file with the given coder and block size, where the image is
+	// the model file to prime PPM with, or null. The output stream is flushed but not closed.
+	// To allow unit testing, this method is package-private instead of private.
+	static void compress(InputStream in, OutputStream out, FramedCoder coder, int blockSize, PpmModelImage image) throws IOException {
+		if (!(1 <= blockSize && blockSize <= MAX_BLOCK_SIZE))
+			throw new IllegalArgumentException("Block size out of range");
+		if (image != null && coder != FramedCoder.PPM)
+			throw new IllegalArgumentException("A model file needs the PPM coder");
+		DataOutputStream dout = new DataOutputStream(out);
+		CheckedOutputStream checked = new CheckedOutputStream(out, new Crc32c());
+		DataOutputStream headerOut = new DataOutputStream(checked);
+		headerOut.writeInt(MAGIC);
+		headerOut.writeByte(VERSION);
+		headerOut.writeByte(coder.ordinal());
+		headerOut.writeLong(image != null ? image.getModelId() : 0);
+		headerOut.writeInt(blockSize);
+		dout.writeInt((int)checked.getChecksum().getValue());
+		
+		// Compress and write each block as soon as it is read
+		List<Block> blocks = new ArrayList<>();
+		long offset = HEADER_SIZE;
+		byte[] buf = new byte[blockSize];
+		while (true) {
+			int n = readBlock(in, buf);
+			if (n == 0)
+				break;
+			byte[] compressed = compressBlock(buf, n, coder, image);
+			if (compressed.length > getMaxCompressedSize(n))
+				throw new AssertionError("Block grew too much");
+			Block block = new Block(offset, compressed.length, n,
+				Crc32c.compute(compressed, 0, compressed.length), Crc32c.compute(buf, 0, n));
+			block.write(dout);
+			dout.write(compressed);
+			blocks.add(block);
+			offset += Block.ENTRY_SIZE + compressed.length;
+		}
+		dout.writeInt(0);  // End of the blocks
+		offset += 4;
+		
+		// Write the index and the trailer
+		checked = new CheckedOutputStream(out, new Crc32c());
+		DataOutputStream indexOut = new DataOutputStream(checked);
+		indexOut.writeInt(blocks.size());
+		for (Block block : blocks)
+			block.write(indexOut);
+		dout.writeInt((int)checked.getChecksum().getValue());
+		dout.writeLong(offset);
+		dout.writeInt(MAGIC);
+		dout.flush();
+	}
+	
+	
+	// Returns the first n bytes of the given array compressed into a complete stream of the given coder.
+	private static byte[] compressBlock(byte[] b, int n, FramedCoder coder, PpmModelImage image) throws IOException {
+		InputStream in = new ByteArrayInputStream(b, 0, n);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			switch (coder) {
+				case STATIC:
+					ArithmeticCompress.compressBlocks(in, bitOut, ArithmeticCompress.DEFAULT_BLOCK_SIZE);
+					break;
+				case ADAPTIVE:
+					AdaptiveArithmeticCompress.compress(in, bitOut);
+					break;
+				case PPM:
+					PpmOptions options = new PpmOptions();
+					if (image != null)
+						image.applyTo(options);
+					PpmCompress.compress(in, bitOut, options, image);
+					break;
+				default:
+					throw new AssertionError();
+			}
+		}
+		return out.toByteArray();
+	}
+	
+	
+	// Returns the largest compressed size of a block of the given uncompressed size. Every coder expands
+	// a block by far less than this, and the limit keeps a corrupt entry from causing a huge allocation.
+	static long getMaxCompressedSize(int uncompressedSize) {
+		return uncompressedSize * 2L + 1024;
+	}
+	
+	
+	// Reads bytes until the given array is full or the input ends, and returns the number of bytes read.
+	private static int readBlock(InputStream in, byte[] block) throws IOException {
+		int n = 0;
+		while (n < block.length) {
+			int k = in.read(block, n, block.length - n);
+			if (k == -1)
+				break;
+			n += k;
+		}
+		return n;
+	}
+	
+	
+	
+	/*---- Helper class ----*/
+	
+	/**
+	 * The entry of one block in a framed file, as it appears before the block and in the block index.
+	 */
+	static final class Block {
+		
+		// The number of bytes in an entry.
+		public static final int ENTRY_SIZE = 16;
+		
+		/** The offset of the entry before the block in the file, which is not stored in the entry. */
+		public final long offset;
+		
+		public final int compressedSize;
+		
+		public final int uncompressedSize;
+		
+		public final int compressedCrc;
+		
+		public final int uncompressedCrc;
+		
+		
+		public Block(long offset, int compressedSize, int uncompressedSize, int compressedCrc, int uncompressedCrc) {
+			this.offset = offset;
+			this.compressedSize = compressedSize;
+			this.uncompressedSize = uncompressedSize;
+			this.compressedCrc = compressedCrc;
+			this.uncompressedCrc = uncompressedCrc;
+		}
+		
+		
+		/**
+		 * Writes this entry to the specified output.
+		 * @param out the output to write to
+		 * @throws IOException if an I/O exception occurred
+		 */
+		public void write(DataOutput out) throws IOException {
+			out.writeInt(compressedSize);
+			out.writeInt(uncompressedSize);
+			out.writeInt(compressedCrc);
+			out.writeInt(uncompressedCrc);
+		}
+		
+		
+		/**
+		 * Tests whether the specified object is an entry with the same offset and values as this one.
+		 * @param obj the object to test
+		 * @return whether the object is an equal entry
+		 */
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Block))
+				return false;
+			Block other = (Block)obj;
+			return offset == other.offset && compressedSize == other.compressedSize
+				&& uncompressedSize == other.uncompressedSize && compressedCrc == other.compressedCrc
+				&& uncompressedCrc == other.uncompressedCrc;
+		}
+		
+		
+		public int hashCode() {
+			return Long.hashCode(offset) + compressedSize * 31 + compressedCrc;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,267 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CheckedInputStream;
+
+
+/**
+ * Decompression application for the framed container format.
+ * <p>Usage: java FramedDecompress [-model ModelFile] InputFile OutputFile</p>
+ * <p>This decompresses files generated by the "FramedCompress" application, reading them in order.
+ * Either file name can be "-" to use standard input or output instead. A file that was compressed with
+ * a model file needs the same model file. Every block is verified before its output is written, and
+ * the block index and trailer are checked against the blocks, so that a corrupt or truncated file
+ * fails with an exception instead of producing wrong output.</p>
+ */
+public final class FramedDecompress {
+	
+	/*---- Main application ----*/
+	
+	public static void main(String[] args) throws IOException {
+		// Handle command line arguments
+		PpmModelImage image = null;
+		if (args.length == 4 && args[0].equals("-model")) {
+			image = PpmModelImage.map(new File(args[1]));
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		if (args.length != 2) {
+			System.err.println("Usage: java FramedDecompress [-model ModelFile] InputFile OutputFile");
+			System.exit(1);
+			return;
+		}
+		InputStream inputStream = args[0].equals("-") ? System.in : new FileInputStream(args[0]);
+		OutputStream outputStream = args[1].equals("-") ? System.out : new FileOutputStream(args[1]);
+		
+		// Perform file decompression
+		try (InputStream in = new BufferedInputStream(inputStream);
+				OutputStream out = new BufferedOutputStream(outputStream)) {
+			decompress(in, out, image);
+		}
+	}
+	
+	
+	
+	/*---- Static functions ----*/
+	
+	// Decompresses a whole framed file from the given input in order, where the image is the model file
+	// that the file may need, or null. The output stream is flushed but not closed.
+	// To allow unit testing, this method is package-private instead of private.
+	static void decompress(InputStream in, OutputStream out, PpmModelImage image) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		Header header = Header.read(din);
+		header.checkImage(image);
+		List<FramedCompress.Block> blocks = new ArrayList<>();
+		long offset = FramedCompress.HEADER_SIZE;
+		while (true) {
+			FramedCompress.Block block = readEntry(din, offset, header);
+			if (block == null)
+				break;
+			byte[] compressed = new byte[block.compressedSize];
+			din.readFully(compressed);
+			out.write(decompressBlock(compressed, block, header, image));
+			blocks.add(block);
+			offset += FramedCompress.Block.ENTRY_SIZE + block.compressedSize;
+		}
+		offset += 4;
+		
+		// The index must repeat the blocks, and the trailer must point to it
+		if (!readIndex(din, offset, header).equals(blocks) || din.readLong() != offset || din.readInt() != FramedCompress.MAGIC)
+			throw new IOException("Block index does not match the blocks");
+		if (din.read() != -1)
+			throw new IOException("Unexpected data after the trailer");
+		out.flush();
+	}
+	
+	
+	/**
+	 * Reads the block index of the specified framed file, using the trailer at its end. Together with
+	 * {@link #decompressBlock(RandomAccessFile, FramedCompress.Block, PpmModelImage)}, this allows any
+	 * block to be decompressed without reading the blocks before it, for seeking and parallel decoding.
+	 * @param file the framed file to read, whose position is changed
+	 * @return the entries of the blocks in order (not {@code null})
+	 * @throws IOException if an I/O exception occurred or the file is not a valid framed file
+	 */
+	public static List<FramedCompress.Block> readIndex(RandomAccessFile file) throws IOException {
+		file.seek(0);
+		Header header = Header.read(file);
+		long length = file.length();
+		if (length < FramedCompress.HEADER_SIZE + 4 + 8 + FramedCompress.TRAILER_SIZE)
+			throw new IOException("Truncated framed file");
+		file.seek(length - FramedCompress.TRAILER_SIZE);
+		long offset = file.readLong();
+		if (file.readInt() != FramedCompress.MAGIC || !(FramedCompress.HEADER_SIZE + 4 <= offset
+				&& offset <= length - FramedCompress.TRAILER_SIZE - 8))
+			throw new IOException("Invalid trailer");
+		
+		// Read the whole index at once, which takes 16 bytes per block
+		byte[] index = new byte[(int)Math.min(length - FramedCompress.TRAILER_SIZE - offset, Integer.MAX_VALUE)];
+		file.seek(offset);
+		file.readFully(index);
+		InputStream in = new ByteArrayInputStream(index);
+		List<FramedCompress.Block> result = readIndex(in, offset, header);
+		if (in.read() != -1)
+			throw new IOException("Invalid block index");
+		return result;
+	}
+	
+	
+	/**
+	 * Reads, verifies and decompresses the specified block of the specified framed file.
+	 * @param file the framed file to read, whose position is changed
+	 * @param block the entry of the block, from {@link #readIndex(RandomAccessFile)}
+	 * @param image the model file that the framed file needs, or {@code null} if none
+	 * @return the uncompressed bytes of the block (not {@code null})
+	 * @throws IOException if an I/O exception occurred, the block is corrupt, or the model file is missing or wrong
+	 */
+	public static byte[] decompressBlock(RandomAccessFile file, FramedCompress.Block block, PpmModelImage image) throws IOException {
+		file.seek(0);
+		Header header = Header.read(file);
+		header.checkImage(image);
+		file.seek(block.offset);
+		if (!block.equals(readEntry(file, block.offset, header)))
+			throw new IOException("Block entry does not match the index");
+		byte[] compressed = new byte[block.compressedSize];
+		file.readFully(compressed);
+		return decompressBlock(compressed, block, header, image);
+	}
+	
+	
+	// Checks the given compressed bytes of the given block, and returns them decompressed and checked.
+	private static byte[] decompressBlock(byte[] compressed, FramedCompress.Block block, Header header, PpmModelImage image) throws IOException {
+		if (Crc32c.compute(compressed, 0, compressed.length) != block.compressedCrc)
+			throw new IOException(String.format("Block at offset %d is corrupt", block.offset));
+		BitInputStream in = new BitInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream(block.uncompressedSize);
+		switch (header.coder) {
+			case STATIC:
+				ArithmeticDecompress.decompress(in, out);
+				break;
+			case ADAPTIVE:
+				AdaptiveArithmeticDecompress.decompress(in, out);
+				break;
+			case PPM:
+				PpmDecompress.decompress(in, out, image);
+				break;
+			default:
+				throw new AssertionError();
+		}
+		byte[] result = out.toByteArray();
+		if (result.length != block.uncompressedSize || Crc32c.compute(result, 0, result.length) != block.uncompressedCrc)
+			throw new IOException(String.format("Block at offset %d decompressed incorrectly", block.offset));
+		return result;
+	}
+	
+	
+	// Reads a block entry that starts at the given offset, or returns null if it is the end of the blocks.
+	private static FramedCompress.Block readEntry(DataInput in, long offset, Header header) throws IOException {
+		int compressedSize = in.readInt();
+		if (compressedSize == 0)
+			return null;
+		int uncompressedSize = in.readInt();
+		if (!(0 < uncompressedSize && uncompressedSize <= header.blockSize)
+				|| !(0 < compressedSize && compressedSize <= FramedCompress.getMaxCompressedSize(uncompressedSize)))
+			throw new IOException(String.format("Invalid block entry at offset %d", offset));
+		return new FramedCompress.Block(offset, compressedSize, uncompressedSize, in.readInt(), in.readInt());
+	}
+	
+	
+	// Reads and checks the block index, which starts at the given offset, and returns its entries.
+	private static List<FramedCompress.Block> readIndex(InputStream in, long offset, Header header) throws IOException {
+		CheckedInputStream checked = new CheckedInputStream(in, new Crc32c());
+		DataInputStream indexIn = new DataInputStream(checked);
+		int numBlocks = indexIn.readInt();
+		if (numBlocks < 0)
+			throw new IOException("Invalid block index");
+		List<FramedCompress.Block> result = new ArrayList<>();
+		long blockOffset = FramedCompress.HEADER_SIZE;
+		for (int i = 0; i < numBlocks; i++) {
+			FramedCompress.Block block = readEntry(indexIn, blockOffset, header);
+			if (block == null || i < numBlocks - 1 && block.uncompressedSize != header.blockSize)
+				throw new IOException("Invalid block index");
+			result.add(block);
+			blockOffset += FramedCompress.Block.ENTRY_SIZE + block.compressedSize;
+			if (blockOffset + 4 > offset)
+				throw new IOException("Invalid block index");
+		}
+		int crc = (int)checked.getChecksum().getValue();
+		if (new DataInputStream(in).readInt() != crc || blockOffset + 4 != offset)
+			throw new IOException("Invalid block index");
+		return result;
+	}
+	
+	
+	
+	/*---- Helper class ----*/
+	
+	// The fields of the header of a framed file.
+	private static final class Header {
+		
+		public final FramedCoder coder;
+		
+		// The id of the model file that the blocks need, or 0 if none.
+		public final long modelId;
+		
+		public final int blockSize;
+		
+		
+		private Header(FramedCoder coder, long modelId, int blockSize) {
+			this.coder = coder;
+			this.modelId = modelId;
+			this.blockSize = blockSize;
+		}
+		
+		
+		// Reads and checks the header.
+		public static Header read(DataInput in) throws IOException {
+			try {
+				byte[] b = new byte[FramedCompress.HEADER_SIZE - 4];
+				in.readFully(b);
+				DataInput fields = new DataInputStream(new ByteArrayInputStream(b));
+				if (fields.readInt() != FramedCompress.MAGIC)
+					throw new IOException("Not a framed file");
+				if (fields.readUnsignedByte() != FramedCompress.VERSION)
+					throw new IOException("Unsupported format version");
+				int coder = fields.readUnsignedByte();
+				long modelId = fields.readLong();
+				int blockSize = fields.readInt();
+				if (in.readInt() != Crc32c.compute(b, 0, b.length) || coder >= FramedCoder.values().length
+						|| !(1 <= blockSize && blockSize <= FramedCompress.MAX_BLOCK_SIZE) || modelId != 0 && coder != FramedCoder.PPM.ordinal())
+					throw new IOException("Invalid framed file header");
+				return new Header(FramedCoder.fromOrdinal(coder), modelId, blockSize);
+			} catch (EOFException e) {
+				throw new IOException("Truncated framed file", e);
+			}
+		}
+		
+		
+		// Throws an exception unless the given image (which may be null) can decompress the blocks.
+		public void checkImage(PpmModelImage image) throws IOException {
+			if (modelId != 0 && (image == null || image.getModelId() != modelId))
+				throw new IOException(String.format("File needs the model file with id %016x", modelId));
+		}
+		
+	}
+	
+}
@@ -0,0 +1,356 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.IOException;
+
+
+/**
+ * Writes and reads a table of symbol frequencies compactly, for the headers of static arithmetic coding.
+ * The table is coded as a sequence of pairs, each being the length of a run of zero frequencies and the
+ * non-zero frequency that follows it, and ends with the run of zeros that reaches the end of the table.
+ * Every number is written with an Elias gamma code, which takes 2 floor(log2 n) + 1 bits for n &ge; 1, so
+ * that small frequencies and short runs are cheap. A header can be written either as raw bits to a
+ * {@link BitOutputStream}, or through an {@link ArithmeticEncoder} between coded symbols. In the latter
+ * case, each bit of the gamma codes is coded with an adaptive binary model that is selected by the
+ * kind of number (run or frequency) and the bit's position, and an {@link AdaptiveModel} keeps learning
+ * over all the headers it codes, so that typical headers take far fewer bits than as raw bits.
+ * <p>To make headers smaller still, a histogram can be scaled to a fixed total with {@link #normalize(long[], int)}
+ * before it is written, at a tiny cost in coding efficiency.</p>
+ */
+final class FrequencyHeader {
+	
+	/*---- Constants ----*/
+	
+	/** The total that large histograms are normalized to by the applications. */
+	public static final int NORMALIZED_TOTAL = 1 << 16;
+	
+	// The kinds of numbers in a header.
+	private static final int RUN = 0;
+	private static final int FREQUENCY = 1;
+	
+	// The largest number of zero bits before the leading 1 of a gamma code, so that every number is less than 2^32.
+	private static final int MAX_GAMMA_ZEROS = 31;
+	
+	
+	
+	/*---- Static functions ----*/
+	
+	/**
+	 * Writes the specified frequencies as raw bits to the specified stream.
+	 * @param freqs the frequencies to write, each at least 0
+	 * @param out the bit output stream to write to
+	 * @throws IllegalArgumentException if a frequency is negative
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public static void write(int[] freqs, final BitOutputStream out) throws IOException {
+		write(freqs, new BitSink() {
+			public void writeBit(int kind, int context, int bit) throws IOException {
+				out.write(bit);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Writes the specified frequencies through the specified arithmetic encoder, with the specified
+	 * model, which is updated. The decoder must read them with a model in the same state.
+	 * @param freqs the frequencies to write, each at least 0
+	 * @param enc the arithmetic encoder to write to
+	 * @param model the adaptive model of the header bits
+	 * @throws IllegalArgumentException if a frequency is negative
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public static void write(int[] freqs, final ArithmeticEncoder enc, final AdaptiveModel model) throws IOException {
+		write(freqs, new BitSink() {
+			public void writeBit(int kind, int context, int bit) throws IOException {
+				FrequencyTable bitFreqs = model.getBitFrequencies(kind, context);
+				enc.write(bitFreqs, bit);
+				bitFreqs.increment(bit);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Reads frequencies written as raw bits from the specified stream into the specified array,
+	 * whose length must equal the length of the array that was written.
+	 * @param in the bit input stream to read from
+	 * @param freqs the array to store the frequencies into
+	 * @throws IOException if an I/O exception occurred, or the header is invalid or ends early
+	 */
+	public static void read(final BitInputStream in, int[] freqs) throws IOException {
+		read(new BitSource() {
+			public int readBit(int kind, int context) throws IOException {
+				return in.readNoEof();
+			}
+		}, freqs);
+	}
+	
+	
+	/**
+	 * Reads frequencies written through an arithmetic encoder from the specified decoder with the specified model,
+	 * which is updated, into the specified array, whose length must equal the length of the array that was written.
+	 * @param dec the arithmetic decoder to read from
+	 * @param freqs the array to store the frequencies into
+	 * @param model the adaptive model of the header bits, in the state that the encoder's model had
+	 * @throws IOException if an I/O exception occurred, or the header is invalid
+	 */
+	public static void read(final ArithmeticDecoder dec, int[] freqs, final AdaptiveModel model) throws IOException {
+		read(new BitSource() {
+			public int readBit(int kind, int context) throws IOException {
+				FrequencyTable bitFreqs = model.getBitFrequencies(kind, context);
+				int bit = dec.read(bitFreqs);
+				bitFreqs.increment(bit);
+				return bit;
+			}
+		}, freqs);
+	}
+	
+	
+	/**
+	 * Returns the number of bits that the specified frequencies take when written as raw bits.
+	 * @param freqs the frequencies to measure, each at least 0
+	 * @return the size of the header in bits
+	 * @throws IllegalArgumentException if a frequency is negative
+	 */
+	public static long getSize(int[] freqs) {
+		long result = 0;
+		int run = 0;
+		for (int freq : freqs) {
+			if (freq < 0)
+				throw new IllegalArgumentException("Negative frequency");
+			if (freq == 0)
+				run++;
+			else {
+				result += getGammaSize(run + 1) + getGammaSize(freq);
+				run = 0;
+			}
+		}
+		return result + getGammaSize(run + 1);
+	}
+	
+	
+	/**
+	 * Returns the specified counts scaled to have the specified total, keeping every non-zero count at least 1, or
+	 * an exact copy of the counts if their total is already at most that. The result can code the same symbols as
+	 * the counts, with a total that fits the arithmetic coder no matter how large the counts are.
+	 * @param counts the counts to normalize, each at least 0
+	 * @param total the total to scale to, which must be at least the number of counts
+	 * @return a new array of the normalized counts
+	 * @throws IllegalArgumentException if a count is negative or the total is too small
+	 */
+	public static int[] normalize(long[] counts, int total) {
+		if (total < counts.length)
+			throw new IllegalArgumentException("Total too small");
+		long sum = 0;
+		for (long c : counts) {
+			if (c < 0)
+				throw new IllegalArgumentException("Negative count");
+			sum += c;  // Cannot overflow for counts of bytes that were actually read
+		}
+		int[] result = new int[counts.length];
+		if (sum <= total) {
+			for (int i = 0; i < counts.length; i++)
+				result[i] = (int)counts[i];
+			return result;
+		}
+		
+		// Scale down, rounding to nearest but keeping every present symbol
+		int largest = 0;
+		long newSum = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				double scaled = (double)counts[i] * total / sum;
+				result[i] = (int)Math.max(Math.round(scaled), 1);
+				newSum += result[i];
+			}
+			if (counts[i] > counts[largest])
+				largest = i;
+		}
+		// Fix the total by adjusting the largest count first, which changes the coding cost the least
+		while (newSum != total) {
+			if (newSum < total) {
+				result[largest] += total - newSum;
+				newSum = total;
+			} else {
+				int index = largest;
+				if (result[index] <= 1) {  // Rare: find any other count that can shrink
+					for (int i = 0; i < result.length; i++) {
+						if (result[i] > result[index])
+							index = i;
+					}
+				}
+				int delta = (int)Math.min(newSum - total, result[index] - 1);
+				result[index] -= delta;
+				newSum -= delta;
+			}
+		}
+		return result;
+	}
+	
+	
+	// Writes the runs and frequencies to the given sink.
+	private static void write(int[] freqs, BitSink out) throws IOException {
+		int run = 0;
+		for (int freq : freqs) {
+			if (freq < 0)
+				throw new IllegalArgumentException("Negative frequency");
+			if (freq == 0)
+				run++;
+			else {
+				writeGamma(out, RUN, run + 1);
+				writeGamma(out, FREQUENCY, freq);
+				run = 0;
+			}
+		}
+		writeGamma(out, RUN, run + 1);  // The final run, which may be empty
+	}
+	
+	
+	// Reads the runs and frequencies from the given source into the given array.
+	private static void read(BitSource in, int[] freqs) throws IOException {
+		long total = 0;
+		int i = 0;
+		while (true) {
+			long run = readGamma(in, RUN) - 1;
+			if (run > freqs.length - i)
+				throw new IOException("Invalid frequency header");
+			for (int end = i + (int)run; i < end; i++)
+				freqs[i] = 0;
+			if (i == freqs.length)
+				break;
+			long freq = readGamma(in, FREQUENCY);
+			total += freq;
+			if (freq > Integer.MAX_VALUE || total > Integer.MAX_VALUE)
+				throw new IOException("Invalid frequency header");
+			freqs[i] = (int)freq;
+			i++;
+		}
+	}
+	
+	
+	// Writes the given value of the given kind, which is at least 1, as floor(log2 value) zero bits followed by the
+	// value's binary digits. The context of a prefix bit is its position, and the context of a digit after the
+	// leading 1 is its position among all the digits after the prefix bits (see AdaptiveModel).
+	private static void writeGamma(BitSink out, int kind, long value) throws IOException {
+		int numZeros = 63 - Long.numberOfLeadingZeros(value);
+		for (int i = 0; i < numZeros; i++)
+			out.writeBit(kind, i, 0);
+		out.writeBit(kind, numZeros, 1);
+		for (int i = numZeros - 1; i >= 0; i--)
+			out.writeBit(kind, AdaptiveModel.getDigitContext(numZeros, i), (int)(value >>> i) & 1);
+	}
+	
+	
+	// Returns the number of bits that writeGamma() writes for the given value, which is at least 1.
+	private static int getGammaSize(long value) {
+		return 2 * (63 - Long.numberOfLeadingZeros(value)) + 1;
+	}
+	
+	
+	// Reads a value of the given kind written by writeGamma(), which must be less than 2^32.
+	private static long readGamma(BitSource in, int kind) throws IOException {
+		int numZeros = 0;
+		while (in.readBit(kind, numZeros) == 0) {
+			numZeros++;
+			if (numZeros > MAX_GAMMA_ZEROS)
+				throw new IOException("Invalid frequency header");
+		}
+		long result = 1;
+		for (int i = numZeros - 1; i >= 0; i--)
+			result = result << 1 | in.readBit(kind, AdaptiveModel.getDigitContext(numZeros, i));
+		return result;
+	}
+	
+	
+	
+	/*---- Helper structures ----*/
+	
+	/**
+	 * The adaptive binary models of the bits of headers coded through an arithmetic coder. A new model
+	 * predicts every bit as equally likely, and each coded bit updates its model, with old statistics
+	 * fading as the frequencies are halved. One instance is meant to code all the headers of a stream,
+	 * and the encoder and decoder must use models that have coded the same headers. Not thread-safe.
+	 */
+	public static final class AdaptiveModel {
+		
+		// The total at which the frequencies of a binary model are halved.
+		private static final int RESCALE_LIMIT = 1 << 10;
+		
+		// The number of models per kind of number: one for each prefix bit position in [0, MAX_GAMMA_ZEROS],
+		// then one for each digit after the leading 1, indexed by the number of prefix zeros and the position.
+		private static final int NUM_CONTEXTS = getDigitContext(MAX_GAMMA_ZEROS + 1, 0);
+		
+		// The binary models, indexed by the kind of number and the context.
+		private final FrequencyTable[][] bitFreqs;
+		
+		
+		/**
+		 * Constructs a model in which every bit is equally likely.
+		 */
+		public AdaptiveModel() {
+			bitFreqs = new FrequencyTable[2][NUM_CONTEXTS];
+			for (FrequencyTable[] tables : bitFreqs) {
+				for (int i = 0; i < tables.length; i++)
+					tables[i] = new RescalingFrequencyTable(new SimpleFrequencyTable(new int[]{1, 1}), RESCALE_LIMIT);
+			}
+		}
+		
+		
+		/**
+		 * Returns the estimated number of bits that the specified frequencies would take if they were written with
+		 * this model now. This ignores how the model adapts while a header is coded, and the rounding of the coder.
+		 * @param freqs the frequencies to measure, each at least 0
+		 * @return the estimated size of the header in bits
+		 * @throws IllegalArgumentException if a frequency is negative
+		 */
+		public double getCost(int[] freqs) {
+			final double[] result = {0};
+			try {
+				write(freqs, new BitSink() {
+					public void writeBit(int kind, int context, int bit) {
+						FrequencyTable table = bitFreqs[kind][context];
+						result[0] += Math.log((double)table.getTotal() / table.get(bit));
+					}
+				});
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			return result[0] / Math.log(2);
+		}
+		
+		
+		// Returns the binary model of the given kind of number and context.
+		FrequencyTable getBitFrequencies(int kind, int context) {
+			return bitFreqs[kind][context];
+		}
+		
+		
+		// Returns the context of the digit at the given position (counting from 0 at the least significant end)
+		// of a gamma code with the given number of prefix zeros, where the position is less than that number.
+		static int getDigitContext(int numZeros, int position) {
+			return MAX_GAMMA_ZEROS + 1 + numZeros * (numZeros - 1) / 2 + position;
+		}
+		
+	}
+	
+	
+	// Where the bits of a header are written.
+	private interface BitSink {
+		// Writes the given bit of a number of the given kind, where the context tells the role of the bit.
+		void writeBit(int kind, int context, int bit) throws IOException;
+	}
+	
+	
+	// Where the bits of a header are read from.
+	private interface BitSource {
+		// Returns the next bit of a number of the given kind, throwing EOFException if the input has ended.
+		int readBit(int kind, int context) throws IOException;
+	}
+	
+}
@@ -79,4 +79,29 @@ public interface FrequencyTable {
 	 */
 	public int getHigh(int symbol);
 	
+	
+	/**
+	 * Returns the symbol whose cumulative frequency range contains the specified value, which is the
+	 * highest symbol such that {@code getLow(symbol)} &le; {@code value}. The value must be in the range
+	 * [0, getTotal()), hence the returned symbol always has a non-zero frequency. The default implementation
+	 * performs a binary search with {@code getLow()}; implementations can override it with a faster search.
+	 * @param value the cumulative frequency value to query
+	 * @return the symbol whose range [getLow(symbol), getHigh(symbol)) contains {@code value}
+	 * @throws IllegalArgumentException if the value is out of range
+	 */
+	public default int getSymbol(int value) {
+		if (!(0 <= value && value < getTotal()))
+			throw new IllegalArgumentException("Value out of range");
+		int start = 0;
+		int end = getSymbolLimit();
+		while (end - start > 1) {
+			int middle = (start + end) >>> 1;
+			if (getLow(middle) > value)
+				end = middle;
+			else
+				start = middle;
+		}
+		return start;
+	}
+	
 }
@@ -0,0 +1,658 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+
+/**
+ * An off-heap store of PPM contexts, as an alternative to the trie of {@link PpmModel.Context} objects.
+ * All contexts live in one direct buffer of ints that is allocated up front, and they refer to each other
+ * by int offsets instead of references, so the garbage collector never sees the individual contexts.
+ * Memory is only allocated by bumping a pointer, and {@link #clear()} frees everything at once.
+ * <p>A context is identified by the offset of its header. The header holds the number of
+ * distinct symbols, the number of singletons, the total frequency, and the size, capacity and offset of the
+ * context's entry list. Each entry holds a symbol, its frequency and the offset of its subcontext (0 if none),
+ * and the entries are sorted by symbol. A full entry list is moved to a new block of twice the capacity, which
+ * leaves the old block unused until the next clear. Offset 0 is never a context, so it means "none".</p>
+ * <p>The caller decides how symbols are counted, so the frequency of an entry may be 0 (for example
+ * to mark a symbol as seen in PPM method B). Not thread-safe.</p>
+ * <p>An arena can also be a copy-on-write view of a read-only base image (see {@link #setBase(IntBuffer, int)}),
+ * which many arenas can share, even in different threads. Then the offsets below the end of the image refer to
+ * the base, and the arena's own storage only holds the offsets after it. A base context must be copied with
+ * {@link #copyOnWrite(int)} before it is changed, and from then on its old offset is redirected to the copy,
+ * so that the parents in the base still lead to it.</p>
+ */
+final class PpmArena {
+	
+	/*---- Constants ----*/
+	
+	// The fields of a context header, as int offsets from the start of the header.
+	private static final int NUM_DISTINCT = 0;
+	private static final int NUM_SINGLETONS = 1;
+	private static final int TOTAL = 2;
+	private static final int SIZE = 3;
+	private static final int CAPACITY = 4;
+	private static final int ENTRIES = 5;
+	private static final int HEADER_INTS = 6;
+	
+	// The fields of an entry, as int offsets from the start of the entry.
+	private static final int SYMBOL = 0;
+	private static final int FREQUENCY = 1;
+	private static final int CHILD = 2;
+	private static final int ENTRY_INTS = 3;
+	
+	// The capacity of the entry list of a new context, which is allocated right after its header.
+	private static final int INITIAL_CAPACITY = 2;
+	
+	// The largest arena, limited by the capacity of a ByteBuffer.
+	public static final long MAX_BYTES = (Integer.MAX_VALUE / 4) * 4L;
+	
+	
+	
+	/*---- Fields ----*/
+	
+	private final int symbolLimit;
+	
+	// The storage of the offsets [baseTop, limit), which are in use up to top. If there is no base, then
+	// baseTop is 0 and the offsets [1, top) are in use, because offset 0 is never allocated.
+	private final IntBuffer ints;
+	private int top;
+	private int limit;
+	
+	// The read-only base image, which holds the offsets [0, baseTop), or null if there is none.
+	private IntBuffer base;
+	private int baseTop;
+	private int numBaseContexts;
+	
+	// The number of contexts, counting the base ones but not their copies.
+	private int numContexts;
+	
+	// An open-addressing hash map from the offset of each copied base context to the offset
+	// of its copy. A key of 0 marks an empty slot, and the length is a power of 2.
+	private int[] forwardKeys;
+	private int[] forwardValues;
+	private int numForwards;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs an empty arena of the specified size, which is allocated immediately outside the Java heap.
+	 * @param memoryLimit the number of bytes to allocate, in the range [64, MAX_BYTES]
+	 * @param symbolLimit the number of symbols of each context, at least 1
+	 * @throws IllegalArgumentException if an argument is out of range
+	 */
+	public PpmArena(long memoryLimit, int symbolLimit) {
+		if (!(64 <= memoryLimit && memoryLimit <= MAX_BYTES) || symbolLimit < 1)
+			throw new IllegalArgumentException();
+		this.symbolLimit = symbolLimit;
+		ints = ByteBuffer.allocateDirect((int)(memoryLimit / 4 * 4)).order(ByteOrder.nativeOrder()).asIntBuffer();
+		limit = ints.capacity();
+		base = null;
+		baseTop = 0;
+		numBaseContexts = 0;
+		forwardKeys = new int[16];
+		forwardValues = new int[forwardKeys.length];
+		clear();
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Discards all contexts at once, making the whole arena available again. The base contexts
+	 * (if any) are kept unchanged, and their old offsets are no longer redirected to copies.
+	 */
+	public void clear() {
+		top = Math.max(baseTop, 1);
+		numContexts = numBaseContexts;
+		if (numForwards > 0) {
+			Arrays.fill(forwardKeys, 0);
+			numForwards = 0;
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of contexts, including the base contexts but not the copies of them.
+	 * @return the number of contexts
+	 */
+	public int getNumContexts() {
+		return numContexts;
+	}
+	
+	
+	/**
+	 * Returns the number of bytes in use of this arena's own storage, including entry lists that were moved.
+	 * @return the number of bytes used
+	 */
+	public long getBytesUsed() {
+		return (top - baseTop) * 4L;
+	}
+	
+	
+	/**
+	 * Returns the size of this arena's own storage in bytes, which excludes the base.
+	 * @return the capacity in bytes
+	 */
+	public long getCapacity() {
+		return ints.capacity() * 4L;
+	}
+	
+	
+	/**
+	 * Tests whether there is enough free space for the worst case of one PPM update, in which
+	 * every context of the chain moves its entry list to the largest size and new contexts are
+	 * created for every order above 0. If there is a base, then every context of the chain
+	 * might need to be copied first.
+	 * @param order the model order, at least 0
+	 * @return whether the free space is enough for one update
+	 */
+	public boolean hasRoomForUpdate(int order) {
+		long needed = getUpdateInts(order, symbolLimit);
+		if (base != null)
+			needed += getCopyInts(order, symbolLimit);
+		return limit - top >= needed;
+	}
+	
+	
+	/**
+	 * Returns the smallest arena size in bytes for a PPM model of the specified order, which is enough
+	 * for an empty root context and one update (see {@link #hasRoomForUpdate(int)}).
+	 * @param order the model order, at least 0
+	 * @param symbolLimit the number of symbols of each context, at least 1
+	 * @return the minimum size in bytes
+	 */
+	public static long getMinimumBytes(int order, int symbolLimit) {
+		return (1 + HEADER_INTS + INITIAL_CAPACITY * ENTRY_INTS + getUpdateInts(order, symbolLimit)) * 4;
+	}
+	
+	
+	/**
+	 * Returns the smallest arena size in bytes for a PPM model of the specified order that has a base,
+	 * which is enough for one update that copies every context of the chain from the base.
+	 * @param order the model order, at least 0
+	 * @param symbolLimit the number of symbols of each context, at least 1
+	 * @return the minimum size in bytes
+	 */
+	public static long getMinimumOverlayBytes(int order, int symbolLimit) {
+		return (getUpdateInts(order, symbolLimit) + getCopyInts(order, symbolLimit)) * 4;
+	}
+	
+	
+	// Returns the number of ints that one update at the given order may allocate in the worst case.
+	private static long getUpdateInts(int order, int symbolLimit) {
+		return (order + 1L) * symbolLimit * ENTRY_INTS + order * (HEADER_INTS + INITIAL_CAPACITY * ENTRY_INTS);
+	}
+	
+	
+	// Returns the number of ints that copying a chain of base contexts at the given order may allocate.
+	private static long getCopyInts(int order, int symbolLimit) {
+		return (order + 1L) * (HEADER_INTS + (long)symbolLimit * ENTRY_INTS);
+	}
+	
+	
+	/**
+	 * Returns the number of ints in use, including the base, which is the
+	 * length of the image written by {@link #write(DataOutput)}.
+	 * @return the number of ints used
+	 */
+	public int getNumInts() {
+		return top;
+	}
+	
+	
+	/**
+	 * Writes the used part of this arena and its base as big-endian ints to the specified output, so that
+	 * {@link #setBase(IntBuffer, int)} can restore the same contexts at the same offsets. This is not
+	 * supported after a base context has been copied, because the copies are only found by redirection.
+	 * @param out the output to write to
+	 * @throws IllegalStateException if a base context has been copied
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void write(DataOutput out) throws IOException {
+		if (numForwards > 0)
+			throw new IllegalStateException("Base contexts have been copied");
+		for (int i = 0; i < top; i++)
+			out.writeInt(getInt(i));
+	}
+	
+	
+	/**
+	 * Discards all contexts and makes the specified image the read-only base of this arena. The image was written
+	 * by {@link #write(DataOutput)} from an arena with the same symbol limit, and its contexts keep their offsets.
+	 * The image is not copied, so it must not change while this arena uses it, but it may be shared by other arenas.
+	 * @param image the ints of the image, from the buffer's position to its limit (the position is not changed)
+	 * @param numContexts the number of contexts in the image
+	 * @throws IllegalArgumentException if the image is too large to address together with this arena
+	 */
+	public void setBase(IntBuffer image, int numContexts) {
+		if ((long)image.remaining() + ints.capacity() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Image too large for the arena");
+		base = image.slice();
+		baseTop = base.capacity();
+		limit = baseTop + ints.capacity();
+		numBaseContexts = numContexts;
+		clear();
+	}
+	
+	
+	/**
+	 * Returns the offset of the specified context after redirection, which is the offset of its copy if it is a
+	 * base context that has been copied, otherwise the same offset. Only the returned offset may be changed.
+	 * @param ctx the offset of the context, or 0
+	 * @return the offset of the current version of the context, or 0
+	 */
+	public int resolve(int ctx) {
+		if (ctx >= baseTop || numForwards == 0)
+			return ctx;
+		int mask = forwardKeys.length - 1;
+		for (int i = hash(ctx) & mask; ; i = (i + 1) & mask) {
+			int key = forwardKeys[i];
+			if (key == 0)  // Also handles ctx == 0, which is never a key
+				return ctx;
+			if (key == ctx)
+				return forwardValues[i];
+		}
+	}
+	
+	
+	/**
+	 * Returns the offset of a writable version of the specified context. If it is a base context, then it is copied
+	 * to this arena's own storage and redirected to the copy, unless there is no room, in which case 0 is returned.
+	 * @param ctx the offset of a resolved context (see {@link #resolve(int)})
+	 * @return the offset of the writable context, or 0
+	 */
+	public int copyOnWrite(int ctx) {
+		if (ctx >= baseTop)
+			return ctx;
+		int capacity = getInt(ctx + CAPACITY);
+		int length = HEADER_INTS + capacity * ENTRY_INTS;
+		if (limit - top < length)
+			return 0;
+		int result = top;
+		top += length;
+		copy(ctx, result, HEADER_INTS);
+		copy(getInt(ctx + ENTRIES), result + HEADER_INTS, getInt(ctx + SIZE) * ENTRY_INTS);
+		putInt(result + ENTRIES, result + HEADER_INTS);
+		
+		if (numForwards * 2 >= forwardKeys.length) {  // Grow and rehash
+			int[] oldKeys = forwardKeys;
+			int[] oldValues = forwardValues;
+			forwardKeys = new int[oldKeys.length * 2];
+			forwardValues = new int[forwardKeys.length];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0)
+					addForward(oldKeys[i], oldValues[i]);
+			}
+		}
+		addForward(ctx, result);
+		numForwards++;
+		return result;
+	}
+	
+	
+	// Stores the given redirection, whose key must not be in the map yet, assuming that there is an empty slot.
+	private void addForward(int key, int value) {
+		int mask = forwardKeys.length - 1;
+		int i = hash(key) & mask;
+		while (forwardKeys[i] != 0)
+			i = (i + 1) & mask;
+		forwardKeys[i] = key;
+		forwardValues[i] = value;
+	}
+	
+	
+	// Mixes the bits of the given offset for the forwarding map.
+	private static int hash(int ctx) {
+		int h = ctx * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	
+	/**
+	 * Allocates a context that has no entries and returns its offset, or returns 0 if there is no room.
+	 * @return the offset of the new context, or 0
+	 */
+	public int newContext() {
+		int size = HEADER_INTS + INITIAL_CAPACITY * ENTRY_INTS;
+		if (limit - top < size)
+			return 0;
+		int ctx = top;
+		top += size;
+		for (int i = 0; i < HEADER_INTS; i++)
+			putInt(ctx + i, 0);
+		putInt(ctx + CAPACITY, INITIAL_CAPACITY);
+		putInt(ctx + ENTRIES, ctx + HEADER_INTS);
+		numContexts++;
+		return ctx;
+	}
+	
+	
+	public int getNumDistinct(int ctx) {
+		return getInt(ctx + NUM_DISTINCT);
+	}
+	
+	
+	public void setNumDistinct(int ctx, int value) {
+		putInt(ctx + NUM_DISTINCT, value);
+	}
+	
+	
+	public int getNumSingletons(int ctx) {
+		return getInt(ctx + NUM_SINGLETONS);
+	}
+	
+	
+	public void setNumSingletons(int ctx, int value) {
+		putInt(ctx + NUM_SINGLETONS, value);
+	}
+	
+	
+	/**
+	 * Returns the sum of the frequencies of the entries of the specified context.
+	 * @param ctx the offset of the context
+	 * @return the total frequency
+	 */
+	public int getTotal(int ctx) {
+		return getInt(ctx + TOTAL);
+	}
+	
+	
+	/**
+	 * Returns the number of entries of the specified context.
+	 * @param ctx the offset of the context
+	 * @return the number of entries
+	 */
+	public int getSize(int ctx) {
+		return getInt(ctx + SIZE);
+	}
+	
+	
+	public int getSymbolAt(int ctx, int index) {
+		return getInt(entry(ctx, index) + SYMBOL);
+	}
+	
+	
+	public int getFrequencyAt(int ctx, int index) {
+		return getInt(entry(ctx, index) + FREQUENCY);
+	}
+	
+	
+	/**
+	 * Sets the frequency of the entry at the specified index, and updates the context's total.
+	 * @param ctx the offset of the context
+	 * @param index the index of the entry
+	 * @param freq the new frequency, at least 0
+	 * @throws ArithmeticException if the total would exceed {@code Integer.MAX_VALUE}
+	 */
+	public void setFrequencyAt(int ctx, int index, int freq) {
+		int e = entry(ctx, index);
+		putInt(ctx + TOTAL, Math.addExact(getInt(ctx + TOTAL) - getInt(e + FREQUENCY), freq));
+		putInt(e + FREQUENCY, freq);
+	}
+	
+	
+	/**
+	 * Returns the resolved subcontext of the entry at the specified index (see {@link #resolve(int)}), or 0 if none.
+	 * @param ctx the offset of the context
+	 * @param index the index of the entry
+	 * @return the offset of the subcontext, or 0
+	 */
+	public int getChildAt(int ctx, int index) {
+		return resolve(getInt(entry(ctx, index) + CHILD));
+	}
+	
+	
+	public void setChildAt(int ctx, int index, int child) {
+		putInt(entry(ctx, index) + CHILD, child);
+	}
+	
+	
+	/**
+	 * Returns the subcontext of the specified context along the specified symbol, or 0 if it has none.
+	 * @param ctx the offset of the context
+	 * @param symbol the symbol to query
+	 * @return the offset of the subcontext, or 0
+	 */
+	public int getChild(int ctx, int symbol) {
+		int index = find(ctx, symbol);
+		return index >= 0 ? getChildAt(ctx, index) : 0;
+	}
+	
+	
+	/**
+	 * Returns the index of the entry for the specified symbol, or ~insertionPoint (a negative
+	 * number) if the context has no entry for the symbol, like {@code Arrays.binarySearch()}.
+	 * @param ctx the offset of the context
+	 * @param symbol the symbol to search for
+	 * @return the index of the entry, or a negative number
+	 */
+	public int find(int ctx, int symbol) {
+		IntBuffer buf = bufferOf(ctx);
+		int shift = shiftOf(ctx);
+		int entries = buf.get(ctx - shift + ENTRIES) - shift;
+		int start = 0;
+		int end = buf.get(ctx - shift + SIZE);
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+			int sym = buf.get(entries + middle * ENTRY_INTS + SYMBOL);
+			if (sym < symbol)
+				start = middle + 1;
+			else if (sym > symbol)
+				end = middle;
+			else
+				return middle;
+		}
+		return ~start;
+	}
+	
+	
+	/**
+	 * Inserts an entry with the specified symbol and frequency and no subcontext at the specified index,
+	 * which must be the insertion point of the symbol. Returns false without any change if the entry list
+	 * is full and there is no room to move it.
+	 * @param ctx the offset of the context
+	 * @param index the insertion point
+	 * @param symbol the symbol of the entry
+	 * @param freq the frequency of the entry, at least 0
+	 * @return whether the entry was inserted
+	 * @throws ArithmeticException if the total would exceed {@code Integer.MAX_VALUE}
+	 */
+	public boolean insertAt(int ctx, int index, int symbol, int freq) {
+		int size = getInt(ctx + SIZE);
+		int capacity = getInt(ctx + CAPACITY);
+		int entries = getInt(ctx + ENTRIES);
+		int total = Math.addExact(getInt(ctx + TOTAL), freq);
+		if (size == capacity) {
+			int newCapacity = Math.min(capacity * 2, symbolLimit);
+			if (limit - top < newCapacity * ENTRY_INTS)
+				return false;
+			int newEntries = top;
+			top += newCapacity * ENTRY_INTS;
+			copy(entries, newEntries, size * ENTRY_INTS);
+			entries = newEntries;
+			putInt(ctx + CAPACITY, newCapacity);
+			putInt(ctx + ENTRIES, entries);
+		}
+		int e = entries + index * ENTRY_INTS;
+		// Shift the later entries up, starting from the end (the context is in this arena's own storage)
+		for (int i = entries + size * ENTRY_INTS - 1 - baseTop; i >= e - baseTop; i--)
+			ints.put(i + ENTRY_INTS, ints.get(i));
+		putInt(e + SYMBOL, symbol);
+		putInt(e + FREQUENCY, freq);
+		putInt(e + CHILD, 0);
+		putInt(ctx + SIZE, size + 1);
+		putInt(ctx + TOTAL, total);
+		return true;
+	}
+	
+	
+	// Returns the offset of the entry at the given index of the given context.
+	private int entry(int ctx, int index) {
+		if (!(0 <= index && index < getInt(ctx + SIZE)))
+			throw new IndexOutOfBoundsException();
+		return getInt(ctx + ENTRIES) + index * ENTRY_INTS;
+	}
+	
+	
+	// Returns the int at the given offset, from the base or from this arena's own storage.
+	private int getInt(int offset) {
+		return offset >= baseTop ? ints.get(offset - baseTop) : base.get(offset);
+	}
+	
+	
+	// Returns the buffer that holds the given context, including its entries, which
+	// is indexed by offset minus shiftOf(ctx). For hoisting the choice out of loops.
+	private IntBuffer bufferOf(int ctx) {
+		return ctx >= baseTop ? ints : base;
+	}
+	
+	
+	private int shiftOf(int ctx) {
+		return ctx >= baseTop ? baseTop : 0;
+	}
+	
+	
+	// Sets the int at the given offset, which must not be in the base.
+	private void putInt(int offset, int value) {
+		ints.put(offset - baseTop, value);
+	}
+	
+	
+	// Copies the given number of ints between non-overlapping ranges.
+	private void copy(int from, int to, int length) {
+		for (int i = 0; i < length; i++)
+			putInt(to + i, getInt(from + i));
+	}
+	
+	
+	
+	/*---- Helper class ----*/
+	
+	/**
+	 * A read-only frequency table view of one context of the arena at a time. The context can be changed
+	 * with {@link #setContext(int)}, so one view can serve every context without allocating. Queries scan
+	 * the entries, so they take O(k) time for k entries, except for {@link #get(int)}, which is O(log k).
+	 */
+	public final class ContextTable implements FrequencyTable {
+		
+		// The offset of the context being viewed, or 0 for an empty table.
+		private int context;
+		
+		
+		public ContextTable() {
+			context = 0;
+		}
+		
+		
+		/**
+		 * Makes this view show the specified context.
+		 * @param ctx the offset of the context, or 0 for an empty table
+		 */
+		public void setContext(int ctx) {
+			context = ctx;
+		}
+		
+		
+		public int getSymbolLimit() {
+			return symbolLimit;
+		}
+		
+		
+		public int get(int symbol) {
+			checkSymbol(symbol);
+			if (context == 0)
+				return 0;
+			int index = find(context, symbol);
+			return index >= 0 ? getFrequencyAt(context, index) : 0;
+		}
+		
+		
+		public int getTotal() {
+			return context != 0 ? PpmArena.this.getTotal(context) : 0;
+		}
+		
+		
+		public int getLow(int symbol) {
+			checkSymbol(symbol);
+			return sumBelow(symbol);
+		}
+		
+		
+		public int getHigh(int symbol) {
+			checkSymbol(symbol);
+			return sumBelow(symbol + 1);
+		}
+		
+		
+		public int getSymbol(int value) {
+			if (!(0 <= value && value < getTotal()))
+				throw new IllegalArgumentException("Value out of range");
+			IntBuffer buf = bufferOf(context);
+			int shift = shiftOf(context);
+			for (int e = buf.get(context - shift + ENTRIES) - shift; ; e += ENTRY_INTS) {
+				value -= buf.get(e + FREQUENCY);
+				if (value < 0)
+					return buf.get(e + SYMBOL);
+			}
+		}
+		
+		
+		/**
+		 * Unsupported operation, because this frequency table is a read-only view.
+		 * @param symbol ignored
+		 * @param freq ignored
+		 * @throws UnsupportedOperationException because this frequency table is a read-only view
+		 */
+		public void set(int symbol, int freq) {
+			throw new UnsupportedOperationException();
+		}
+		
+		
+		/**
+		 * Unsupported operation, because this frequency table is a read-only view.
+		 * @param symbol ignored
+		 * @throws UnsupportedOperationException because this frequency table is a read-only view
+		 */
+		public void increment(int symbol) {
+			throw new UnsupportedOperationException();
+		}
+		
+		
+		// Returns the sum of the frequencies of the entries whose symbols are less than the given value.
+		private int sumBelow(int end) {
+			if (context == 0)
+				return 0;
+			IntBuffer buf = bufferOf(context);
+			int shift = shiftOf(context);
+			int entries = buf.get(context - shift + ENTRIES) - shift;
+			int stop = entries + buf.get(context - shift + SIZE) * ENTRY_INTS;
+			int result = 0;
+			for (int e = entries; e < stop && buf.get(e + SYMBOL) < end; e += ENTRY_INTS)
+				result += buf.get(e + FREQUENCY);
+			return result;
+		}
+		
+		
+		// Returns silently if 0 <= symbol < symbolLimit, otherwise throws an exception.
+		private void checkSymbol(int symbol) {
+			if (!(0 <= symbol && symbol < symbolLimit))
+				throw new IllegalArgumentException("Symbol out of range");
+		}
+		
+	}
+	
+}
@@ -0,0 +1,43 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+
+/**
+ * What a PPM model does when its context trie reaches the node limit. Each policy is deterministic,
+ * so a compressor and decompressor that use the same policy and limit build identical models. The policy
+ * is recorded in the stream header by its ordinal, which must never change.
+ */
+enum PpmBudgetPolicy {
+	
+	/** Discard every context except the order 0 context, clear its counts, and start learning again. */
+	RESTART,
+	
+	/** Stop creating contexts, but keep updating the counts of the contexts that already exist. */
+	FREEZE,
+	
+	/**
+	 * Halve every count, and discard the symbols whose count becomes 0 along with their subcontexts.
+	 * This is repeated until at most half of the node limit is used.
+	 */
+	PRUNE;
+	
+	
+	/**
+	 * Returns the policy with the specified ordinal, as stored in a stream header.
+	 * @param ordinal the ordinal to query
+	 * @return the policy with the ordinal (not {@code null})
+	 * @throws IllegalArgumentException if the ordinal is out of range
+	 */
+	public static PpmBudgetPolicy fromOrdinal(int ordinal) {
+		PpmBudgetPolicy[] values = values();
+		if (!(0 <= ordinal && ordinal < values.length))
+			throw new IllegalArgumentException("Unknown budget policy");
+		return values[ordinal];
+	}
+	
+}
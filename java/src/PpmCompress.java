@@ -18,90 +18,136 @@ import java.util.Arrays;
 
 /**
  * Compression application using prediction by partial matching (PPM) with arithmetic coding.
- * <p>Usage: java PpmCompress InputFile OutputFile</p>
+ * <p>Usage: java PpmCompress [-order N] [-memory Bytes] [-escape A|B|C|D|X] [-see] [-offheap] [-nodes N] [-policy RESTART|FREEZE|PRUNE] [-model ModelFile] InputFile OutputFile</p>
  * <p>Then use the corresponding "PpmDecompress" application to recreate the original input file.</p>
  * <p>Note that both the compressor and decompressor need to use the same PPM context modeling logic.
  * The PPM algorithm can be thought of as a powerful generalization of adaptive arithmetic coding.</p>
+ * <p>The compressed file format starts with the model options (see {@link PpmOptions}
+ * for the header layout), followed by the arithmetic-coded data. A memory limit above 1 GiB
+ * needs the same or a larger "-maxmemory" option for the decompressor.</p>
+ * <p>With "-model", the model is primed with a model file made by the "PpmTrain" application, and
+ * the order, escape method and SEE options come from that file. The decompressor needs the same file.
+ * The memory limit then sizes the private arena for the contexts that the input changes (1 MiB by default).</p>
  */
 public final class PpmCompress {
 	
-	// Must be at least -1 and match PpmDecompress. Warning: Exponential memory usage at O(257^n).
-	private static final int MODEL_ORDER = 3;
-	
-	
 	public static void main(String[] args) throws IOException {
 		// Handle command line arguments
+		PpmOptions options = new PpmOptions();
+		PpmModelImage image = null;
+		int i = 0;
+		for (; i < args.length - 2; i++) {
+			String arg = args[i];
+			if (arg.equals("-see"))
+				options.setSeeEnabled(true);
+			else if (arg.equals("-offheap"))
+				options.setOffHeap(true);
+			else if (i + 1 < args.length - 2 && arg.equals("-order"))
+				options.setOrder(Integer.parseInt(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-memory"))
+				options.setMemoryLimit(Long.parseLong(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-escape"))
+				options.setEscapeMethod(PpmEscapeMethod.valueOf(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-nodes"))
+				options.setNodeLimit(Integer.parseInt(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-policy"))
+				options.setBudgetPolicy(PpmBudgetPolicy.valueOf(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-model"))
+				image = PpmModelImage.map(new File(args[++i]));
+			else
+				break;
+		}
+		args = Arrays.copyOfRange(args, i, args.length);
 		if (args.length != 2) {
-			System.err.println("Usage: java PpmCompress InputFile OutputFile");
+			System.err.println("Usage: java PpmCompress [-order N] [-memory Bytes] [-escape A|B|C|D|X] [-see] [-offheap] [-nodes N] [-policy RESTART|FREEZE|PRUNE] [-model ModelFile] InputFile OutputFile");
 			System.exit(1);
 			return;
 		}
 		File inputFile  = new File(args[0]);
 		File outputFile = new File(args[1]);
+		if (image != null)
+			image.applyTo(options);
 		
 		// Perform file compression
 		try (InputStream in = new BufferedInputStream(new FileInputStream(inputFile));
 				BitOutputStream out = new BitOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
-			compress(in, out);
+			compress(in, out, options, image);
 		}
 	}
 	
 	
 	// To allow unit testing, this method is package-private instead of private.
 	static void compress(InputStream in, BitOutputStream out) throws IOException {
+		compress(in, out, new PpmOptions());
+	}
+	
+	
+	// Compresses with a new model that has the given options, which are written to the stream header.
+	// To allow unit testing, this method is package-private instead of private.
+	static void compress(InputStream in, BitOutputStream out, PpmOptions options) throws IOException {
+		compress(in, out, options, null);
+	}
+	
+	
+	// Compresses with a new model that has the given options and is primed with the given image, if not null.
+	// The model id of the options must be the id of the image, or 0 if there is no image.
+	// To allow unit testing, this method is package-private instead of private.
+	static void compress(InputStream in, BitOutputStream out, PpmOptions options, PpmModelImage image) throws IOException {
+		if (options.getModelId() != (image != null ? image.getModelId() : 0))
+			throw new IllegalArgumentException("Model id does not match the model image");
+		PpmModel model = options.newModel();
+		if (image != null)
+			model.prime(image);
+		options.write(out);
+		encode(in, model, out);
+	}
+	
+	
+	// Encodes all the bytes of the given input and then EOF with the given model, which learns from
+	// the input as it goes. This writes no header, so it is also used to train a model.
+	static void encode(InputStream in, PpmModel model, BitOutputStream out) throws IOException {
 		// Set up encoder and model. In this PPM model, symbol 256 represents EOF;
 		// its frequency is 1 in the order -1 context but its frequency
 		// is 0 in all other contexts (which have non-negative order).
 		ArithmeticEncoder enc = new ArithmeticEncoder(32, out);
-		PpmModel model = new PpmModel(MODEL_ORDER, 257, 256);
-		int[] history = new int[0];
+		PpmHistory history = new PpmHistory(Math.max(model.modelOrder, 0));
 		
 		while (true) {
 			// Read and encode one byte
 			int symbol = in.read();
 			if (symbol == -1)
 				break;
-			encodeSymbol(model, history, symbol, enc);
+			encodeSymbol(model, symbol, enc);
 			model.incrementContexts(history, symbol);
-			
-			if (model.modelOrder >= 1) {
-				// Prepend current symbol, dropping oldest symbol if necessary
-				if (history.length < model.modelOrder)
-					history = Arrays.copyOf(history, history.length + 1);
-				System.arraycopy(history, 0, history, 1, history.length - 1);
-				history[0] = symbol;
-			}
+			history.append(symbol);  // Drops the oldest symbol if the history is full
 		}
 		
-		encodeSymbol(model, history, 256, enc);  // EOF
+		encodeSymbol(model, 256, enc);  // EOF
 		enc.finish();  // Flush remaining code bits
 	}
 	
 	
-	private static void encodeSymbol(PpmModel model, int[] history, int symbol, ArithmeticEncoder enc) throws IOException {
+	private static void encodeSymbol(PpmModel model, int symbol, ArithmeticEncoder enc) throws IOException {
 		// Try to use highest order context that exists based on the history suffix, such
 		// that the next symbol has non-zero frequency. When symbol 256 is produced at a context
 		// at any non-negative order, it means "escape to the next lower order with non-empty
 		// context". When symbol 256 is produced at the order -1 context, it means "EOF".
-		outer:
-		for (int order = history.length; order >= 0; order--) {
-			PpmModel.Context ctx = model.rootContext;
-			for (int i = 0; i < order; i++) {
-				if (ctx.subcontexts == null)
-					throw new AssertionError();
-				ctx = ctx.subcontexts[history[i]];
-				if (ctx == null)
-					continue outer;
-			}
-			if (symbol != 256 && ctx.frequencies.get(symbol) > 0) {
-				enc.write(ctx.frequencies, symbol);
+		// Symbols that were seen in a context we escaped from are excluded from the lower orders,
+		// because the escape already implies that the next symbol is none of them.
+		for (int order = model.getChainLength(); order >= 0; order--) {
+			FrequencyTable freqs = model.getExcludedFrequencies(order);
+			if (freqs.getTotal() == freqs.get(256))
+				continue;  // Only the escape symbol remains, so it is implied without coding anything
+			if (symbol != 256 && freqs.get(symbol) > 0) {
+				enc.write(freqs, symbol);
 				return;
 			}
 			// Else write context escape symbol and continue decrementing the order
-			enc.write(ctx.frequencies, 256);
+			enc.write(freqs, 256);
+			model.excludeContext(order);
 		}
 		// Logic for order = -1
-		enc.write(model.orderMinus1Freqs, symbol);
+		enc.write(model.getExcludedFrequencies(-1), symbol);
 	}
 	
 }
@@ -18,19 +18,30 @@ import java.util.Arrays;
 
 /**
  * Decompression application using prediction by partial matching (PPM) with arithmetic coding.
- * <p>Usage: java PpmDecompress InputFile OutputFile</p>
- * <p>This decompresses files generated by the "PpmCompress" application.</p>
+ * <p>Usage: java PpmDecompress [-model ModelFile] [-maxmemory Bytes] InputFile OutputFile</p>
+ * <p>This decompresses files generated by the "PpmCompress" application,
+ * allocating the model from the options that are read from the start of the file.
+ * A file that was compressed with a model file needs the same model file. A file whose
+ * memory limit is above the maximum (1 GiB by default) is rejected before any memory is allocated.</p>
  */
 public final class PpmDecompress {
 	
-	// Must be at least -1 and match PpmCompress. Warning: Exponential memory usage at O(257^n).
-	private static final int MODEL_ORDER = 3;
-	
-	
 	public static void main(String[] args) throws IOException {
 		// Handle command line arguments
+		PpmModelImage image = null;
+		long maxMemoryLimit = PpmOptions.DEFAULT_MAX_READ_MEMORY;
+		int i = 0;
+		for (; i + 1 < args.length - 2; i += 2) {
+			if (args[i].equals("-model"))
+				image = PpmModelImage.map(new File(args[i + 1]));
+			else if (args[i].equals("-maxmemory"))
+				maxMemoryLimit = Long.parseLong(args[i + 1]);
+			else
+				break;
+		}
+		args = Arrays.copyOfRange(args, i, args.length);
 		if (args.length != 2) {
-			System.err.println("Usage: java PpmDecompress InputFile OutputFile");
+			System.err.println("Usage: java PpmDecompress [-model ModelFile] [-maxmemory Bytes] InputFile OutputFile");
 			System.exit(1);
 			return;
 		}
@@ -40,60 +51,74 @@ public final class PpmDecompress {
 		// Perform file decompression
 		try (BitInputStream in = new BitInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
 				OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
-			decompress(in, out);
+			decompress(in, out, image, maxMemoryLimit);
 		}
 	}
 	
 	
 	// To allow unit testing, this method is package-private instead of private.
 	static void decompress(BitInputStream in, OutputStream out) throws IOException {
+		decompress(in, out, null);
+	}
+	
+	
+	// Decompresses a stream that may need the given model image (or null) to prime the model.
+	// To allow unit testing, this method is package-private instead of private.
+	static void decompress(BitInputStream in, OutputStream out, PpmModelImage image) throws IOException {
+		decompress(in, out, image, PpmOptions.DEFAULT_MAX_READ_MEMORY);
+	}
+	
+	
+	// Decompresses a stream like above, rejecting a stream header whose memory limit is above the given maximum.
+	// To allow unit testing, this method is package-private instead of private.
+	static void decompress(BitInputStream in, OutputStream out, PpmModelImage image, long maxMemoryLimit) throws IOException {
+		PpmOptions options = PpmOptions.read(in, maxMemoryLimit);
+		PpmModel model = options.newModel();
+		if (options.getModelId() != 0) {
+			if (image == null || image.getModelId() != options.getModelId())
+				throw new IOException(String.format("Stream needs the model file with id %016x", options.getModelId()));
+			try {
+				model.prime(image);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Model file does not match the stream header", e);
+			}
+		}
+		
 		// Set up decoder and model. In this PPM model, symbol 256 represents EOF;
 		// its frequency is 1 in the order -1 context but its frequency
 		// is 0 in all other contexts (which have non-negative order).
 		ArithmeticDecoder dec = new ArithmeticDecoder(32, in);
-		PpmModel model = new PpmModel(MODEL_ORDER, 257, 256);
-		int[] history = new int[0];
+		PpmHistory history = new PpmHistory(Math.max(model.modelOrder, 0));
 		
 		while (true) {
 			// Decode and write one byte
-			int symbol = decodeSymbol(dec, model, history);
+			int symbol = decodeSymbol(dec, model);
 			if (symbol == 256)  // EOF symbol
 				break;
 			out.write(symbol);
 			model.incrementContexts(history, symbol);
-			
-			if (model.modelOrder >= 1) {
-				// Prepend current symbol, dropping oldest symbol if necessary
-				if (history.length < model.modelOrder)
-					history = Arrays.copyOf(history, history.length + 1);
-				System.arraycopy(history, 0, history, 1, history.length - 1);
-				history[0] = symbol;
-			}
+			history.append(symbol);  // Drops the oldest symbol if the history is full
 		}
 	}
 	
 	
-	private static int decodeSymbol(ArithmeticDecoder dec, PpmModel model, int[] history) throws IOException {
+	private static int decodeSymbol(ArithmeticDecoder dec, PpmModel model) throws IOException {
 		// Try to use highest order context that exists based on the history suffix. When symbol 256
 		// is consumed at a context at any non-negative order, it means "escape to the next lower order
 		// with non-empty context". When symbol 256 is consumed at the order -1 context, it means "EOF".
-		outer:
-		for (int order = history.length; order >= 0; order--) {
-			PpmModel.Context ctx = model.rootContext;
-			for (int i = 0; i < order; i++) {
-				if (ctx.subcontexts == null)
-					throw new AssertionError();
-				ctx = ctx.subcontexts[history[i]];
-				if (ctx == null)
-					continue outer;
-			}
-			int symbol = dec.read(ctx.frequencies);
+		// The symbols seen in a context we escaped from are excluded, exactly as in the compressor.
+		for (int order = model.getChainLength(); order >= 0; order--) {
+			FrequencyTable freqs = model.getExcludedFrequencies(order);
+			if (freqs.getTotal() == freqs.get(256))
+				continue;  // Only the escape symbol remains, so it is implied without reading anything
+			int symbol = dec.read(freqs);
 			if (symbol < 256)
 				return symbol;
 			// Else we read the context escape symbol, so continue decrementing the order
+			model.excludeContext(order);
 		}
 		// Logic for order = -1
-		return dec.read(model.orderMinus1Freqs);
+		return dec.read(model.getExcludedFrequencies(-1));
 	}
 	
 }
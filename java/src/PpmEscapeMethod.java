@@ -0,0 +1,56 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+
+/**
+ * The ways that a PPM model can estimate the frequency of the escape symbol in a context, in terms
+ * of the statistics of the symbols seen in that context. Both the compressor and decompressor must use
+ * the same method, so it is recorded in the stream header by its ordinal, which must never change.
+ * Here n is the number of distinct symbols seen in the context.
+ */
+enum PpmEscapeMethod {
+	
+	/** Method A: The escape frequency is always 1, and each symbol's frequency is its count. */
+	A,
+	
+	/**
+	 * Method B: The escape frequency is n, and each symbol's frequency is its count minus 1,
+	 * so a symbol is only predicted after it is seen twice in the context.
+	 */
+	B,
+	
+	/** Method C: The escape frequency is n, and each symbol's frequency is its count. */
+	C,
+	
+	/**
+	 * Method D: The escape frequency is n, and each symbol's frequency is twice its count minus 1.
+	 * This is equivalent to adding 1/2 to both the symbol and the escape when a novel symbol is seen.
+	 */
+	D,
+	
+	/**
+	 * Method X: The escape frequency is the number of distinct symbols seen exactly once
+	 * (but at least 1), and each symbol's frequency is its count.
+	 */
+	X;
+	
+	
+	/**
+	 * Returns the escape method with the specified ordinal, as stored in a stream header.
+	 * @param ordinal the ordinal to query
+	 * @return the escape method with the ordinal (not {@code null})
+	 * @throws IllegalArgumentException if the ordinal is out of range
+	 */
+	public static PpmEscapeMethod fromOrdinal(int ordinal) {
+		PpmEscapeMethod[] values = values();
+		if (!(0 <= ordinal && ordinal < values.length))
+			throw new IllegalArgumentException("Unknown escape method");
+		return values[ordinal];
+	}
+	
+}
@@ -0,0 +1,303 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.Arrays;
+
+
+/**
+ * A fixed-size hash table of PPM contexts, as an alternative to the trie of {@link PpmModel.Context}
+ * objects. A context of order k (1 &le; k &le; 8) is keyed by its k most recent history bytes packed into
+ * a long, so the key is exact and two different contexts never share statistics. The table is divided
+ * into buckets of 4 slots, whose keys occupy 32 consecutive bytes (half a typical cache line). When a
+ * bucket is full, inserting a new context evicts a context of that bucket. Each slot has a recency bit, which
+ * is set whenever its context is returned. The victim is the context with the lowest frequency total among
+ * those without the bit, or among all of them if every one has it, and then the bits of the bucket are
+ * cleared. So a context that stops being used loses to the ones in use at the next eviction, however
+ * large its total has grown, instead of keeping the statistics of the early input forever.
+ * <p>The store also counts the bytes of every context, which grow as its frequency table stores more symbols
+ * (the contexts always stay sparse). Whenever the total exceeds the memory limit, contexts are evicted in slot
+ * order until it fits again, where a context with the recency bit is skipped once and loses the bit. The contexts returned since the last call to {@link #accountUpdates()} are
+ * never evicted, because the caller still holds them. So the memory limit is kept apart from the root
+ * context, the few contexts of the current update, and the rough estimates of the object sizes.</p>
+ * <p>The behavior is fully deterministic, so a compressor and decompressor that perform the same sequence
+ * of operations on tables of the same size keep identical contents. Not thread-safe.</p>
+ */
+final class PpmHashStore {
+	
+	/*---- Constants ----*/
+	
+	// The highest context order supported, because each history byte takes 8 bits of the key.
+	public static final int MAX_ORDER = 8;
+	
+	// Number of slots in each bucket.
+	private static final int BUCKET_SIZE = 4;
+	
+	// Heap cost of the arrays of the store per slot: the key, order, reference, counted bytes and recency bit.
+	private static final int SLOT_ARRAY_BYTES = 8 + 1 + 8 + 4 + 1;
+	
+	// Rough heap cost of a context object and its sparse frequency table, without the table's arrays.
+	private static final int EMPTY_CONTEXT_BYTES = 48 + 40;
+	
+	// Rough heap cost of one slot holding a typical context, used to convert a memory budget to a number
+	// of slots: the slot's share of the arrays, plus a context whose sparse frequency table has a few symbols.
+	static final int BYTES_PER_SLOT = SLOT_ARRAY_BYTES + EMPTY_CONTEXT_BYTES + 2 * (8 * 4 + 16);
+	
+	
+	
+	/*---- Fields ----*/
+	
+	private final int symbolLimit;
+	
+	// The number of buckets minus 1, where the number of buckets is a power of 2.
+	private final int bucketMask;
+	
+	// The following arrays have the same length (the number of slots), and slot i of bucket b is
+	// at index b * BUCKET_SIZE + i. A slot is empty if and only if its 'orders' element is 0.
+	private final long[] keys;
+	private final byte[] orders;
+	private final PpmModel.Context[] contexts;
+	
+	// The bytes of the context in each slot, as counted when it was last measured, or 0 for an empty slot.
+	private final int[] contextBytes;
+	
+	// Whether the context in each slot was returned since the bit was last cleared by an eviction.
+	private final boolean[] recentlyUsed;
+	
+	// Number of non-empty slots.
+	private int size;
+	
+	private final long memoryLimit;
+	
+	// The bytes of the arrays plus the sum of contextBytes.
+	private long usedBytes;
+	
+	// The slots of the contexts returned by getOrCreate() since the last call to accountUpdates(),
+	// at indexes [0, numUpdatedSlots). These may be changed by the caller, and are never evicted.
+	private final int[] updatedSlots;
+	private int numUpdatedSlots;
+	
+	// The slot that was last examined for eviction over the memory limit.
+	private int evictionHand;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs an empty hash store whose total size is roughly within the specified memory budget.
+	 * The number of slots is the largest power of 2 that fits, but at least one bucket is always allocated.
+	 * @param memoryLimit the approximate number of bytes to use
+	 * @param symbolLimit the number of symbols of each context's frequency table
+	 * @throws IllegalArgumentException if {@code memoryLimit} &le; 0 or {@code symbolLimit} &lt; 1
+	 */
+	public PpmHashStore(long memoryLimit, int symbolLimit) {
+		if (memoryLimit <= 0 || symbolLimit < 1)
+			throw new IllegalArgumentException();
+		this.symbolLimit = symbolLimit;
+		
+		long numSlots = Math.max(memoryLimit / BYTES_PER_SLOT, BUCKET_SIZE);
+		numSlots = Math.min(Long.highestOneBit(numSlots), 1 << 30);
+		bucketMask = (int)(numSlots / BUCKET_SIZE) - 1;
+		keys = new long[(int)numSlots];
+		orders = new byte[(int)numSlots];
+		contexts = new PpmModel.Context[(int)numSlots];
+		contextBytes = new int[(int)numSlots];
+		recentlyUsed = new boolean[(int)numSlots];
+		size = 0;
+		this.memoryLimit = memoryLimit;
+		usedBytes = numSlots * SLOT_ARRAY_BYTES;
+		updatedSlots = new int[MAX_ORDER];
+		numUpdatedSlots = 0;
+		evictionHand = 0;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the number of slots, which is the maximum number of contexts that can be stored.
+	 * @return the capacity of this hash store
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+	
+	
+	/**
+	 * Returns the number of contexts currently stored.
+	 * @return the number of contexts in this hash store
+	 */
+	public int size() {
+		return size;
+	}
+	
+	
+	/**
+	 * Returns the estimated number of bytes used by this store and its contexts, which is at most the memory
+	 * limit after each call to {@link #accountUpdates()}, unless a single bucket holds more than the limit.
+	 * @return the estimated number of bytes used
+	 */
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+	
+	
+	/**
+	 * Returns the context for the specified order whose history is the specified key, or {@code null} if it is not stored.
+	 * @param key the packed history, where the most recent byte is in bits 0 to 7, the next one in bits 8 to 15, etc.
+	 * @param order the context order, in the range [1, 8]
+	 * @return the stored context or {@code null}
+	 */
+	public PpmModel.Context get(long key, int order) {
+		int start = bucketStart(key, order);
+		for (int i = start; i < start + BUCKET_SIZE; i++) {
+			if (orders[i] == order && keys[i] == key)
+				return contexts[i];
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Returns the context for the specified order whose history is the specified key, creating
+	 * it if it is not stored. A new context has not seen any symbol.
+	 * Creating a context in a full bucket evicts a context that was not used recently. The
+	 * returned context is not evicted before the next call to {@link #accountUpdates()}, which must
+	 * be called after changing it. If every slot of the bucket holds such a context, then the new
+	 * context is returned without being stored.
+	 * @param key the packed history, in the same format as {@link #get(long, int)}
+	 * @param order the context order, in the range [1, 8]
+	 * @return the stored or newly created context (not {@code null})
+	 */
+	public PpmModel.Context getOrCreate(long key, int order) {
+		int start = bucketStart(key, order);
+		int victim = -1;
+		for (int i = start; i < start + BUCKET_SIZE; i++) {
+			if (orders[i] == order && keys[i] == key) {
+				markUpdated(i);
+				recentlyUsed[i] = true;
+				return contexts[i];
+			}
+			// Prefer the first empty slot, then the slots without the recency bit, then the first slot with the lowest total
+			if (isUpdated(i))
+				continue;
+			if (victim == -1 || orders[victim] != 0 && (orders[i] == 0
+					|| !recentlyUsed[i] && recentlyUsed[victim] || recentlyUsed[i] == recentlyUsed[victim]
+					&& contexts[i].frequencies.getTotal() < contexts[victim].frequencies.getTotal()))
+				victim = i;
+		}
+		
+		PpmModel.Context ctx = new PpmModel.Context(symbolLimit, false);
+		if (victim == -1)
+			return ctx;
+		if (orders[victim] != 0) {
+			remove(victim);
+			Arrays.fill(recentlyUsed, start, start + BUCKET_SIZE, false);
+		}
+		keys[victim] = key;
+		orders[victim] = (byte)order;
+		contexts[victim] = ctx;
+		contextBytes[victim] = getContextBytes(ctx);
+		usedBytes += contextBytes[victim];
+		size++;
+		markUpdated(victim);
+		recentlyUsed[victim] = true;
+		evictOverLimit();
+		return ctx;
+	}
+	
+	
+	/**
+	 * Counts the current bytes of the contexts returned by {@link #getOrCreate(long, int)} since the last
+	 * call to this method, which the caller may have changed since, and evicts other contexts until the
+	 * total fits the memory limit again. After this, any of the contexts may be evicted.
+	 */
+	public void accountUpdates() {
+		for (int i = 0; i < numUpdatedSlots; i++) {
+			int slot = updatedSlots[i];
+			int bytes = getContextBytes(contexts[slot]);
+			usedBytes += bytes - contextBytes[slot];
+			contextBytes[slot] = bytes;
+		}
+		numUpdatedSlots = 0;
+		evictOverLimit();
+	}
+	
+	
+	// Evicts the contexts in slot order, starting after the last slot examined and skipping the updated ones,
+	// until the used bytes fit the memory limit or every slot has been examined twice. A slot with the recency
+	// bit is skipped and loses the bit, so it is only evicted if it is not used before the next visit.
+	private void evictOverLimit() {
+		for (int i = 0; i < keys.length * 2 && usedBytes > memoryLimit; i++) {
+			evictionHand = (evictionHand + 1) & (keys.length - 1);
+			if (orders[evictionHand] == 0 || isUpdated(evictionHand))
+				continue;
+			if (recentlyUsed[evictionHand])
+				recentlyUsed[evictionHand] = false;
+			else
+				remove(evictionHand);
+		}
+	}
+	
+	
+	// Empties the given non-empty slot.
+	private void remove(int slot) {
+		usedBytes -= contextBytes[slot];
+		contextBytes[slot] = 0;
+		orders[slot] = 0;
+		contexts[slot] = null;
+		recentlyUsed[slot] = false;
+		size--;
+	}
+	
+	
+	// Records that the context in the given slot was returned, so that it is measured again and not evicted yet.
+	private void markUpdated(int slot) {
+		if (!isUpdated(slot)) {
+			if (numUpdatedSlots == updatedSlots.length)
+				throw new IllegalStateException("Too many contexts between updates");
+			updatedSlots[numUpdatedSlots] = slot;
+			numUpdatedSlots++;
+		}
+	}
+	
+	
+	// Tests whether the given slot holds a context returned since the last update.
+	private boolean isUpdated(int slot) {
+		for (int i = 0; i < numUpdatedSlots; i++) {
+			if (updatedSlots[i] == slot)
+				return true;
+		}
+		return false;
+	}
+	
+	
+	// Returns the estimated heap bytes of the given context, which has a sparse frequency table and no subcontexts.
+	private static int getContextBytes(PpmModel.Context ctx) {
+		int result = EMPTY_CONTEXT_BYTES;
+		int capacity = ((SparseFrequencyTable)ctx.frequencies).getCapacity();
+		if (capacity > 0)
+			result += 2 * (capacity * 4 + 16);
+		if (ctx.seenSymbols != null)
+			result += ctx.seenSymbols.length * 8 + 16;
+		return result;
+	}
+	
+	
+	// Returns the index of the first slot of the bucket for the given key and order.
+	private int bucketStart(long key, int order) {
+		if (!(1 <= order && order <= MAX_ORDER))
+			throw new IllegalArgumentException("Order out of range");
+		long h = (key + order) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return ((int)(h >>> 32) & bucketMask) * BUCKET_SIZE;
+	}
+	
+}
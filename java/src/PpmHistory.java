@@ -0,0 +1,102 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+
+/**
+ * The most recent symbols of a PPM coder, kept in a fixed-size ring buffer. Appending a symbol
+ * drops the oldest one once the history is full, and takes constant time without allocating.
+ * Symbols are indexed by age, so index 0 is the most recent symbol. Not thread-safe.
+ */
+final class PpmHistory {
+	
+	/*---- Fields ----*/
+	
+	// The ring buffer, whose length is a power of 2 that is at least the capacity.
+	private final int[] symbols;
+	
+	// Equal to symbols.length - 1, for wrapping indexes.
+	private final int mask;
+	
+	private final int capacity;
+	
+	// The number of symbols stored, in the range [0, capacity].
+	private int length;
+	
+	// The index in the buffer where the next symbol will be written.
+	private int position;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs an empty history that keeps up to the specified number of symbols.
+	 * @param capacity the maximum number of symbols, in the range [0, 2^30]
+	 * @throws IllegalArgumentException if the capacity is out of range
+	 */
+	public PpmHistory(int capacity) {
+		if (!(0 <= capacity && capacity <= (1 << 30)))
+			throw new IllegalArgumentException("Capacity out of range");
+		this.capacity = capacity;
+		symbols = new int[capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+		mask = symbols.length - 1;
+		length = 0;
+		position = 0;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the maximum number of symbols that this history keeps.
+	 * @return the capacity, at least 0
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	
+	/**
+	 * Returns the number of symbols currently in this history, which is
+	 * the number of symbols appended so far but at most the capacity.
+	 * @return the length, in the range [0, capacity]
+	 */
+	public int length() {
+		return length;
+	}
+	
+	
+	/**
+	 * Returns the symbol at the specified age, where 0 is the most recently appended symbol.
+	 * @param index the age of the symbol, in the range [0, length)
+	 * @return the symbol at the age
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public int get(int index) {
+		if (!(0 <= index && index < length))
+			throw new IndexOutOfBoundsException();
+		return symbols[(position - 1 - index) & mask];
+	}
+	
+	
+	/**
+	 * Appends the specified symbol as the most recent one, dropping the oldest
+	 * symbol if the history is full. This does nothing if the capacity is 0.
+	 * @param symbol the symbol to append
+	 */
+	public void append(int symbol) {
+		if (capacity == 0)
+			return;
+		symbols[position] = symbol;
+		position = (position + 1) & mask;
+		if (length < capacity)
+			length++;
+	}
+	
+}
@@ -6,6 +6,8 @@
  * https://www.nayuki.io/page/reference-arithmetic-coding
  */
 
+import java.util.Arrays;
+
 
 final class PpmModel {
 	
@@ -13,56 +15,636 @@ final class PpmModel {
 	
 	public final int modelOrder;
 	
+	public final PpmEscapeMethod escapeMethod;
+	
+	// Whether the escape frequencies are estimated by SEE instead of the escape method's formula.
+	public final boolean useSee;
+	
+	// The maximum number of contexts in the trie (counting the root), or 0 for no limit. When the
+	// trie has this many contexts before an update, the budget policy is applied. Because one update
+	// creates at most modelOrder contexts, the limit can be exceeded by less than modelOrder.
+	public final int nodeLimit;
+	
+	public final PpmBudgetPolicy budgetPolicy;
+	
 	private final int symbolLimit;
 	private final int escapeSymbol;
 	
 	public final Context rootContext;
 	public final FrequencyTable orderMinus1Freqs;
 	
+	// If not null, the contexts of order 1 and above are kept in this bounded table instead of the trie.
+	private final PpmHashStore hashStore;
+	
+	// If not null, all the contexts are kept in this off-heap arena instead of the trie, the root is at
+	// arenaRoot, and the chain is in arenaChain instead of contextChain. The spare arena is the target
+	// of pruning, which copies the surviving contexts, and it is only allocated when first needed.
+	// If the model is primed, then the arena is a copy-on-write view of the image, and primedRoot
+	// is the root of the image, which the budget policies return to. Otherwise primedRoot is 0.
+	private PpmArena arena;
+	private PpmArena spareArena;
+	private int arenaRoot;
+	private int primedRoot;
+	private final int[] arenaChain;
+	
+	// The view of an arena context that the exclusions are based on, which belongs to the current arena.
+	private PpmArena.ContextTable arenaTable;
+	
+	// The number of contexts in the trie, including the root. Not maintained for the hash table or the arena.
+	private int nodeCount;
+	
+	// The contexts for the current history, where contextChain[k] is the context of order k for
+	// all k in [0, chainLength]. Each one is the suffix of the next, and chainLength increases
+	// by 1 for each symbol until it reaches the model order, unless some contexts are missing
+	// because of the node limit. Unused elements are null.
+	// If the model order is -1, then the array is empty and chainLength is -1.
+	private final Context[] contextChain;
+	private int chainLength;
+	
+	// The symbols ruled out by the higher-order contexts that escaped while coding the current symbol.
+	// This view is cleared after each update, and is reused as the coding table for every order.
+	private final ExclusionFrequencyTable exclusions;
+	
+	// The secondary escape estimator, or null if SEE is not used. It learns from the contexts coded for each symbol.
+	private final SecondaryEscapeEstimator see;
+	
+	// The order of the latest context whose escape frequency came from SEE, or -2 if none.
+	private int seeOrder;
+	
 	
 	
 	/*---- Constructors ----*/
 	
 	public PpmModel(int order, int symbolLimit, int escapeSymbol) {
-		if (!(order >= -1 && 0 <= escapeSymbol && escapeSymbol < symbolLimit))
+		this(new PpmOptions().setOrder(order).setEscapeMethod(PpmEscapeMethod.A), symbolLimit, escapeSymbol);
+	}
+	
+	
+	// Constructs a model with the given options, which are copied. If the memory limit is 0, then the
+	// contexts are kept in a trie, optionally bounded by the node limit. Otherwise they are kept in a hash
+	// table of roughly that many bytes that evicts old contexts, and the order must be at most 8. But if the
+	// off-heap option is set, then they are kept in an off-heap arena of exactly that many bytes instead, and
+	// the budget policy is applied whenever the arena might not have room for the next update. The escape
+	// method determines how symbols are counted, and also the escape frequencies unless SEE is used.
+	public PpmModel(PpmOptions options, int symbolLimit, int escapeSymbol) {
+		int order = options.getOrder();
+		long memoryLimit = options.getMemoryLimit();
+		boolean offHeap = options.isOffHeap();
+		if (!(0 <= escapeSymbol && escapeSymbol < symbolLimit))
 			throw new IllegalArgumentException();
+		if (offHeap) {
+			if (!(PpmArena.getMinimumBytes(order, symbolLimit) <= memoryLimit && memoryLimit <= PpmArena.MAX_BYTES))
+				throw new IllegalArgumentException("Memory limit out of range for an off-heap model");
+		} else {
+			if (memoryLimit > 0 && order > PpmHashStore.MAX_ORDER)
+				throw new IllegalArgumentException("Order too large for a bounded memory model");
+			if (memoryLimit > 0 && options.getNodeLimit() > 0)
+				throw new IllegalArgumentException("Node limit with a bounded memory model");
+		}
 		this.modelOrder = order;
 		this.symbolLimit = symbolLimit;
 		this.escapeSymbol = escapeSymbol;
+		this.escapeMethod = options.getEscapeMethod();
+		this.useSee = options.isSeeEnabled();
+		this.nodeLimit = options.getNodeLimit();
+		this.budgetPolicy = options.getBudgetPolicy();
 		
-		if (order >= 0) {
-			rootContext = new Context(symbolLimit, order >= 1);
-			rootContext.frequencies.increment(escapeSymbol);
-		} else
+		if (order >= 0 && !offHeap)
+			rootContext = new Context(symbolLimit, order >= 1 && memoryLimit == 0, true);
+		else
 			rootContext = null;
 		orderMinus1Freqs = new FlatFrequencyTable(symbolLimit);
+		if (memoryLimit > 0 && order >= 1 && !offHeap)
+			hashStore = new PpmHashStore(memoryLimit, symbolLimit);
+		else
+			hashStore = null;
+		nodeCount = 1;
+		contextChain = new Context[Math.max(order + 1, 0)];
+		if (rootContext != null)
+			contextChain[0] = rootContext;
+		if (offHeap && order >= 0) {
+			arena = new PpmArena(memoryLimit, symbolLimit);
+			arenaRoot = arena.newContext();
+			arenaChain = new int[order + 1];
+			arenaChain[0] = arenaRoot;
+			arenaTable = arena.new ContextTable();
+		} else {
+			arena = null;
+			arenaChain = null;
+			arenaTable = null;
+		}
+		spareArena = null;
+		primedRoot = 0;
+		chainLength = Math.min(order, 0);
+		exclusions = new ExclusionFrequencyTable(orderMinus1Freqs);
+		see = useSee && order >= 0 ? new SecondaryEscapeEstimator(order) : null;
+		seeOrder = -2;
 	}
 	
 	
 	
 	/*---- Methods ----*/
 	
-	public void incrementContexts(int[] history, int symbol) {
+	// Returns the highest order of the current contexts, which is the number of history symbols they are
+	// based on. This is in the range [0, modelOrder], or -1 if the model order is -1. It is less than
+	// the length of the history if the trie lacks the longer contexts because of the node limit.
+	public int getChainLength() {
+		return chainLength;
+	}
+	
+	
+	// Returns the context of the given order for the current history, which is never null.
+	// This takes constant time, because the contexts are found when the model is updated.
+	// Off-heap contexts are not objects, so this is not supported for an off-heap model.
+	public Context getContext(int order) {
+		if (!(0 <= order && order <= chainLength))
+			throw new IllegalArgumentException();
+		if (arena != null)
+			throw new IllegalStateException("Contexts are off-heap");
+		return contextChain[order];
+	}
+	
+	
+	// Replaces all the contexts and the SEE state of this new model with those of the given image, so that coding
+	// starts with the statistics of the image's training data. The model must be off-heap, and its order, escape
+	// method, SEE setting and symbol limit must match the image. The history must be empty when this is called.
+	// The image is not copied: the arena becomes a copy-on-write view of it, so only the contexts that this model
+	// updates are copied into its own arena, and any number of models (in any threads) can share one image.
+	// The memory limit is the size of the model's own arena. When that is full, RESTART and PRUNE both return
+	// to the state of the image, because pruning would have to copy the image, and FREEZE stops copying.
+	public void prime(PpmModelImage image) {
+		if (arena == null)
+			throw new IllegalStateException("Only an off-heap model can be primed");
+		if (image.getOrder() != modelOrder || image.getEscapeMethod() != escapeMethod
+				|| image.isSeeEnabled() != useSee || image.getSymbolLimit() != symbolLimit)
+			throw new IllegalArgumentException("Model image does not match the model options");
+		if (arena.getCapacity() < PpmArena.getMinimumOverlayBytes(modelOrder, symbolLimit))
+			throw new IllegalArgumentException("Memory limit too small for a primed model");
+		arena.setBase(image.getArenaInts(), image.getNumContexts());
+		primedRoot = image.getRootOffset();
+		arenaRoot = primedRoot;
+		arenaChain[0] = arenaRoot;
+		chainLength = 0;
+		if (see != null)
+			see.setState(image.getSeeState());
+	}
+	
+	
+	// Returns the symbol limit of every context. For PpmModelImage.
+	int getSymbolLimit() {
+		return symbolLimit;
+	}
+	
+	
+	// Returns the off-heap arena, or null if the model is not off-heap. For PpmModelImage.
+	PpmArena getArena() {
+		return arena;
+	}
+	
+	
+	// Returns the offset of the root context in the arena. For PpmModelImage.
+	int getArenaRoot() {
+		return arenaRoot;
+	}
+	
+	
+	// Returns the secondary escape estimator, or null if SEE is not used. For PpmModelImage.
+	SecondaryEscapeEstimator getSee() {
+		return see;
+	}
+	
+	
+	// Returns the hash table of the contexts of order 1 and above, or null if they are not hashed. For unit tests.
+	PpmHashStore getHashStore() {
+		return hashStore;
+	}
+	
+	
+	// Returns the frequencies of the context of the given order (where -1 means the order -1 context) for the
+	// current history, but without the symbols excluded so far by excludeContext(). The returned view is
+	// shared, so it is only valid until the next call to this method or a method that changes the model.
+	// The frequency of the escape symbol is computed from the context by the escape method or by SEE.
+	public FrequencyTable getExcludedFrequencies(int order) {
+		if (order == -1) {
+			exclusions.setBase(orderMinus1Freqs);
+			return exclusions;
+		}
+		
+		FrequencyTable freqs;
+		int numDistinct;
+		int numSingletons;
+		if (arena != null) {
+			if (!(0 <= order && order <= chainLength))
+				throw new IllegalArgumentException();
+			int ctx = arenaChain[order];
+			arenaTable.setContext(ctx);
+			freqs = arenaTable;
+			numDistinct = arena.getNumDistinct(ctx);
+			numSingletons = arena.getNumSingletons(ctx);
+		} else {
+			Context ctx = getContext(order);
+			freqs = ctx.frequencies;
+			numDistinct = ctx.numDistinct;
+			numSingletons = ctx.numSingletons;
+		}
+		
+		if (see != null && numDistinct > 0) {
+			exclusions.setBase(freqs);
+			int remaining = exclusions.getTotal();
+			if (remaining > 0) {
+				int escapeFreq = see.getEscapeFrequency(order, numDistinct,
+					freqs.getTotal(), exclusions.getNumExcluded() == 0, remaining);
+				exclusions.setBase(freqs, escapeSymbol, escapeFreq, see.getScale());
+				seeOrder = order;
+				return exclusions;
+			}
+		}
+		exclusions.setBase(freqs, escapeSymbol, getEscapeFrequency(numDistinct, numSingletons));
+		return exclusions;
+	}
+	
+	
+	// Excludes the symbols that have a non-zero frequency in the context of the given order from the lower
+	// orders, after the escape symbol was coded in that context. The escape symbol itself is never excluded.
+	public void excludeContext(int order) {
+		if (order == seeOrder)
+			see.markEscape();
+		if (arena != null) {
+			if (!(0 <= order && order <= chainLength))
+				throw new IllegalArgumentException();
+			int ctx = arenaChain[order];
+			for (int i = 0; i < arena.getSize(ctx); i++) {
+				int sym = arena.getSymbolAt(ctx, i);
+				if (sym != escapeSymbol && arena.getFrequencyAt(ctx, i) > 0)
+					exclusions.exclude(sym);
+			}
+			return;
+		}
+		FrequencyTable freqs = getContext(order).frequencies;
+		if (freqs instanceof SparseFrequencyTable) {
+			// Only visit the symbols that are present
+			SparseFrequencyTable sparse = (SparseFrequencyTable)freqs;
+			for (int i = 0; i < sparse.getNumPresent(); i++) {
+				int sym = sparse.getPresentSymbol(i);
+				if (sym != escapeSymbol)
+					exclusions.exclude(sym);
+			}
+		} else {
+			for (int sym = 0; sym < symbolLimit; sym++) {
+				if (sym != escapeSymbol && freqs.get(sym) > 0)
+					exclusions.exclude(sym);
+			}
+		}
+	}
+	
+	
+	// Increments the frequency of the given symbol in each context of the current history, which must be
+	// the given history (with at most modelOrder symbols), and then moves to the contexts for the history
+	// with the symbol appended. The contexts of the new history are created if they don't exist yet, unless
+	// the trie is frozen at its node limit. Because the context of order k + 1 is found from the old context
+	// of order k, each order is visited once. If the node limit has been reached, the budget policy is
+	// applied first. This also clears the excluded symbols and trains SEE, ready for coding the next symbol.
+	public void incrementContexts(PpmHistory history, int symbol) {
+		exclusions.clearExclusions();
+		if (see != null) {
+			see.update();
+			seeOrder = -2;
+		}
 		if (modelOrder == -1)
 			return;
-		if (!(history.length <= modelOrder && 0 <= symbol && symbol < symbolLimit))
+		if (!(chainLength <= history.length() && history.length() <= modelOrder && 0 <= symbol && symbol < symbolLimit))
 			throw new IllegalArgumentException();
+		if (hashStore != null && symbol >= 256)
+			throw new IllegalArgumentException("Symbol out of range for hashing");
 		
-		Context ctx = rootContext;
-		ctx.frequencies.increment(symbol);
-		int i = 0;
-		for (int sym : history) {
-			Context[] subctxs = ctx.subcontexts;
-			if (subctxs == null)
-				throw new AssertionError();
+		boolean frozen = false;
+		if (nodeLimit > 0 && getNodeCount() >= nodeLimit || arena != null && !arena.hasRoomForUpdate(modelOrder)) {
+			switch (budgetPolicy) {
+				case RESTART:
+					restart();
+					break;
+				case FREEZE:
+					frozen = true;
+					break;
+				case PRUNE:
+					prune(history);
+					break;
+				default:
+					throw new AssertionError();
+			}
+		}
+		
+		if (arena != null) {
+			incrementArenaContexts(symbol, frozen);
+			return;
+		}
+		for (int order = 0; order <= chainLength; order++) {
+			incrementSymbol(contextChain[order], symbol);
+			// A dense table would take most of the bytes of a hashed context's memory budget
+			if (order == 0 || hashStore == null)
+				contextChain[order].checkDensity();
+		}
+		
+		int newLength = Math.min(chainLength + 1, modelOrder);
+		if (hashStore != null) {
+			hashStore.accountUpdates();
+			long key = symbol;
+			for (int order = 1; order <= newLength; order++) {
+				if (order >= 2)
+					key |= (long)history.get(order - 2) << ((order - 1) * 8);
+				contextChain[order] = hashStore.getOrCreate(key, order);
+			}
+		} else {
+			// The trie is keyed from the oldest symbol to the newest, so the order k + 1 context of the
+			// new history is the child of the order k context of the old history along the new symbol.
+			// Iterate downward so that each old context is read before it is overwritten.
+			for (int order = newLength; order >= 1; order--) {
+				Context parent = contextChain[order - 1];
+				if (!parent.hasSubcontexts)
+					throw new AssertionError();
+				Context child = parent.getSubcontext(symbol);
+				if (child == null && !frozen) {
+					child = new Context(symbolLimit, order < modelOrder, order <= Context.MAX_DENSE_ORDER);
+					parent.setSubcontext(symbol, child);
+					nodeCount++;
+				}
+				contextChain[order] = child;  // Null if frozen and missing
+			}
+			// A context exists only if its prefix does, so the chain stops at the first missing one
+			for (int order = 1; order <= newLength; order++) {
+				if (contextChain[order] == null) {
+					Arrays.fill(contextChain, order, newLength + 1, null);
+					newLength = order - 1;
+					break;
+				}
+			}
+		}
+		chainLength = newLength;
+	}
+	
+	
+	// Discards all the contexts except the root, and clears the counts of the root (or returns to the
+	// contexts of the image, if primed). The current chain becomes just the root, and SEE keeps what it learned.
+	private void restart() {
+		if (arena != null) {
+			arena.clear();
+			arenaRoot = primedRoot != 0 ? primedRoot : arena.newContext();
+			arenaChain[0] = arenaRoot;
+		} else {
+			rootContext.clear();
+			nodeCount = 1;
+			Arrays.fill(contextChain, 1, contextChain.length, null);
+		}
+		chainLength = 0;
+	}
+	
+	
+	// Halves all counts in the trie and discards the contexts that become unreachable, until at most half
+	// of the node limit (and half of the arena, if any) is used. Then the chain is found again by walking
+	// the trie along the given history.
+	private void prune(PpmHistory history) {
+		if (arena != null) {
+			pruneArena(history);
+			return;
+		}
+		do nodeCount = pruneContext(rootContext);
+		while (nodeCount > 1 && nodeCount > nodeLimit / 2);
+		
+		Arrays.fill(contextChain, 1, contextChain.length, null);
+		chainLength = 0;
+		for (int order = 1; order <= history.length(); order++) {
+			Context ctx = rootContext;
+			for (int i = order - 1; i >= 0 && ctx != null; i--)
+				ctx = ctx.getSubcontext(history.get(i));
+			if (ctx == null)
+				break;
+			contextChain[order] = ctx;
+			chainLength = order;
+		}
+	}
+	
+	
+	// Halves the counts of the given context, and forgets the symbols that drop to a count of 0 together with
+	// their subcontexts. Then recurses into the remaining subcontexts, and returns the number of contexts left
+	// in this subtree. With method B the stored count is one less than the number of occurrences, so a symbol
+	// is forgotten if it occurred once, and otherwise its stored count is halved like the others.
+	private int pruneContext(Context ctx) {
+		FrequencyTable freqs = ctx.frequencies;
+		int result = 1;
+		ctx.numDistinct = 0;
+		ctx.numSingletons = 0;
+		for (int sym = 0; sym < symbolLimit; sym++) {
+			int count = freqs.get(sym);
+			boolean keep;
+			if (escapeMethod == PpmEscapeMethod.B) {
+				long mask = 1L << sym;  // Shift is implicitly modulo 64
+				if (ctx.seenSymbols == null || (ctx.seenSymbols[sym >>> 6] & mask) == 0)
+					continue;
+				keep = count > 0;
+				if (!keep)
+					ctx.seenSymbols[sym >>> 6] &= ~mask;
+			} else {
+				if (count == 0)
+					continue;
+				keep = count >= 2;
+			}
+			if (count > 0)
+				freqs.set(sym, count / 2);
 			
-			if (subctxs[sym] == null) {
-				subctxs[sym] = new Context(symbolLimit, i + 1 < modelOrder);
-				subctxs[sym].frequencies.increment(escapeSymbol);
+			Context child = ctx.getSubcontext(sym);
+			if (keep) {
+				ctx.numDistinct++;
+				if (count / 2 == 1)
+					ctx.numSingletons++;
+				if (child != null)
+					result += pruneContext(child);
+			} else if (child != null)
+				ctx.setSubcontext(sym, null);
+		}
+		return result;
+	}
+	
+	
+	// Returns the number of contexts in the trie or the arena, including the root.
+	private int getNodeCount() {
+		return arena != null ? arena.getNumContexts() : nodeCount;
+	}
+	
+	
+	// Does the rest of incrementContexts() for the off-heap model. When frozen, no context is created, and a
+	// context's new symbol is ignored if its entry list can't grow. Otherwise the arena has room for everything.
+	// In a primed model, each context of the chain is first copied from the image unless it was already.
+	private void incrementArenaContexts(int symbol, boolean frozen) {
+		for (int order = 0; order <= chainLength; order++) {
+			int ctx = arena.copyOnWrite(arenaChain[order]);
+			if (ctx == 0) {
+				if (!frozen)
+					throw new AssertionError();
+				continue;  // Frozen and out of room, so this image context stays as it is
+			}
+			arenaChain[order] = ctx;
+			incrementArenaSymbol(ctx, symbol);
+		}
+		arenaRoot = arenaChain[0];
+		
+		// Like the trie, but a subcontext lives in the parent's entry for the symbol
+		int newLength = Math.min(chainLength + 1, modelOrder);
+		for (int order = newLength; order >= 1; order--) {
+			int parent = arenaChain[order - 1];
+			int index = arena.find(parent, symbol);
+			int child = index >= 0 ? arena.getChildAt(parent, index) : 0;
+			if (child == 0 && index >= 0 && !frozen) {
+				child = arena.newContext();
+				if (child == 0)
+					throw new AssertionError();
+				arena.setChildAt(parent, index, child);
 			}
-			ctx = subctxs[sym];
-			ctx.frequencies.increment(symbol);
-			i++;
+			arenaChain[order] = child;  // 0 if missing
+		}
+		for (int order = 1; order <= newLength; order++) {
+			if (arenaChain[order] == 0) {
+				newLength = order - 1;
+				break;
+			}
+		}
+		chainLength = newLength;
+	}
+	
+	
+	// Updates the statistics of the given arena context for an occurrence of the given symbol, with the
+	// same rules as incrementSymbol(). With method B, a seen symbol is an entry whose frequency may be 0.
+	private void incrementArenaSymbol(int ctx, int symbol) {
+		int index = arena.find(ctx, symbol);
+		if (index < 0) {
+			int freq = escapeMethod == PpmEscapeMethod.B ? 0 : 1;
+			if (!arena.insertAt(ctx, ~index, symbol, freq))
+				return;  // Frozen and out of room
+			arena.setNumDistinct(ctx, arena.getNumDistinct(ctx) + 1);
+			if (escapeMethod == PpmEscapeMethod.X)
+				arena.setNumSingletons(ctx, arena.getNumSingletons(ctx) + 1);
+		} else {
+			int count = arena.getFrequencyAt(ctx, index);
+			arena.setFrequencyAt(ctx, index, Math.addExact(count, escapeMethod == PpmEscapeMethod.D ? 2 : 1));
+			if (escapeMethod == PpmEscapeMethod.X && count == 1)
+				arena.setNumSingletons(ctx, arena.getNumSingletons(ctx) - 1);
+		}
+	}
+	
+	
+	// Prunes the off-heap model by copying the surviving contexts into the spare arena and swapping the two,
+	// which frees the old contexts at once. This is repeated until the limits are met, like prune().
+	// A primed model returns to the contexts of the image instead, but keeps the chain like pruning does.
+	private void pruneArena(PpmHistory history) {
+		if (primedRoot != 0) {
+			arena.clear();
+			arenaRoot = primedRoot;
+		} else {
+			if (spareArena == null)
+				spareArena = new PpmArena(arena.getCapacity(), symbolLimit);
+			do {
+				spareArena.clear();
+				arenaRoot = copyPrunedContext(arenaRoot, spareArena);
+				PpmArena temp = arena;
+				arena = spareArena;
+				spareArena = temp;
+			} while (arena.getNumContexts() > 1 && (nodeLimit > 0 && arena.getNumContexts() > nodeLimit / 2
+				|| arena.getBytesUsed() > arena.getCapacity() / 2));
+			arenaTable = arena.new ContextTable();
+		}
+		
+		arenaChain[0] = arenaRoot;
+		chainLength = 0;
+		for (int order = 1; order <= history.length(); order++) {
+			int ctx = arenaRoot;
+			for (int i = order - 1; i >= 0 && ctx != 0; i--)
+				ctx = arena.getChild(ctx, history.get(i));
+			if (ctx == 0)
+				break;
+			arenaChain[order] = ctx;
+			chainLength = order;
+		}
+	}
+	
+	
+	// Copies the given context of the current arena into the given arena with the counts halved, keeping the same
+	// symbols and subcontexts as pruneContext() would, and recurses into the kept subcontexts. Returns the new offset.
+	private int copyPrunedContext(int ctx, PpmArena target) {
+		int result = target.newContext();
+		if (result == 0)
+			throw new AssertionError();  // The copy never needs more room than the original
+		int numDistinct = 0;
+		int numSingletons = 0;
+		for (int i = 0; i < arena.getSize(ctx); i++) {
+			int count = arena.getFrequencyAt(ctx, i);
+			if (escapeMethod == PpmEscapeMethod.B ? count == 0 : count < 2)
+				continue;
+			int index = target.getSize(result);
+			if (!target.insertAt(result, index, arena.getSymbolAt(ctx, i), count / 2))
+				throw new AssertionError();
+			numDistinct++;
+			if (count / 2 == 1)
+				numSingletons++;
+			int child = arena.getChildAt(ctx, i);
+			if (child != 0)
+				target.setChildAt(result, index, copyPrunedContext(child, target));
+		}
+		target.setNumDistinct(result, numDistinct);
+		target.setNumSingletons(result, numSingletons);
+		return result;
+	}
+	
+	
+	// Updates the statistics of the given context for an occurrence of the given symbol, as the escape method requires.
+	private void incrementSymbol(Context ctx, int symbol) {
+		FrequencyTable freqs = ctx.frequencies;
+		int count = freqs.get(symbol);
+		switch (escapeMethod) {
+			case A:
+			case C:
+				freqs.increment(symbol);
+				break;
+			case B:
+				if (ctx.seenSymbols == null)
+					ctx.seenSymbols = new long[(symbolLimit + 63) >>> 6];
+				long mask = 1L << symbol;  // Shift is implicitly modulo 64
+				if ((ctx.seenSymbols[symbol >>> 6] & mask) == 0) {
+					ctx.seenSymbols[symbol >>> 6] |= mask;
+					ctx.numDistinct++;
+				} else
+					freqs.increment(symbol);
+				return;
+			case D:
+				freqs.set(symbol, count == 0 ? 1 : Math.addExact(count, 2));
+				break;
+			case X:
+				freqs.increment(symbol);
+				if (count == 0)
+					ctx.numSingletons++;
+				else if (count == 1)
+					ctx.numSingletons--;
+				break;
+			default:
+				throw new AssertionError();
+		}
+		if (count == 0)
+			ctx.numDistinct++;
+	}
+	
+	
+	// Returns the frequency of the escape symbol in a context with the given statistics according to the escape method. If
+	// the context has not seen any symbol, then the result is 0 for every method except A, which means that the context is skipped.
+	private int getEscapeFrequency(int numDistinct, int numSingletons) {
+		switch (escapeMethod) {
+			case A:
+				return 1;
+			case B:
+			case C:
+			case D:
+				return numDistinct;
+			case X:
+				return numDistinct == 0 ? 0 : Math.max(numSingletons, 1);
+			default:
+				throw new AssertionError();
 		}
 	}
 	
@@ -72,17 +654,151 @@ final class PpmModel {
 	
 	public static final class Context {
 		
-		public final FrequencyTable frequencies;
+		// A context whose sparse frequency table or subcontext list holds more symbols than this switches to a
+		// dense array indexed by symbol, because the queries of the sparse forms get slower as they grow.
+		static final int MAX_SPARSE_SYMBOLS = 32;
+		
+		// The trie contexts of this order and below are created in dense form. At the default order, these
+		// are all the contexts with subcontexts, whose sparse forms cost more time than their few bytes save.
+		static final int MAX_DENSE_ORDER = PpmOptions.DEFAULT_ORDER - 1;
+		
+		// The symbol frequencies. This starts as an empty SparseFrequencyTable, and is replaced by an equal
+		// FenwickFrequencyTable once it holds more than MAX_SPARSE_SYMBOLS symbols, except in a PpmHashStore.
+		FrequencyTable frequencies;
 		
-		public final Context[] subcontexts;
+		// Whether this context may have subcontexts, which is false for the highest order.
+		public final boolean hasSubcontexts;
+		
+		// Whether this context uses the dense forms from the start, which suits the few low-order contexts.
+		private final boolean dense;
+		
+		// In sparse form, the symbols that have a subcontext in ascending order, and those subcontexts, at
+		// indexes [0, numSubcontexts). Both are null until the first subcontext is added. In dense form,
+		// subcontextSymbols is null and subcontexts is indexed by symbol, with null for a missing one.
+		private int[] subcontextSymbols;
+		private Context[] subcontexts;
+		private int numSubcontexts;
+		private boolean denseSubcontexts;
+		
+		// Number of distinct symbols seen, excluding the escape symbol.
+		int numDistinct;
+		
+		// Number of distinct symbols whose frequency is 1 (only maintained for escape method X).
+		int numSingletons;
+		
+		// Bit set of the symbols seen at least once (only allocated for escape method B).
+		long[] seenSymbols;
 		
 		
 		public Context(int symbols, boolean hasSubctx) {
-			frequencies = new SimpleFrequencyTable(new int[symbols]);
-			if (hasSubctx)
-				subcontexts = new Context[symbols];
-			else
+			this(symbols, hasSubctx, false);
+		}
+		
+		
+		// Constructs a context that has no symbols, in dense form from the start if the flag is true.
+		public Context(int symbols, boolean hasSubctx, boolean dense) {
+			this.dense = dense;
+			hasSubcontexts = hasSubctx;
+			reset(symbols);
+		}
+		
+		
+		// Returns the subcontext along the given symbol, or null if it doesn't exist.
+		public Context getSubcontext(int symbol) {
+			if (denseSubcontexts)
+				return subcontexts[symbol];
+			int index = indexOfSubcontext(symbol);
+			return index >= 0 ? subcontexts[index] : null;
+		}
+		
+		
+		// Sets the subcontext along the given symbol, where null removes it.
+		public void setSubcontext(int symbol, Context ctx) {
+			if (!hasSubcontexts)
+				throw new IllegalStateException();
+			if (denseSubcontexts) {
+				if (subcontexts[symbol] != null)
+					numSubcontexts--;
+				if (ctx != null)
+					numSubcontexts++;
+				subcontexts[symbol] = ctx;
+				return;
+			}
+			int index = indexOfSubcontext(symbol);
+			if (index >= 0) {
+				if (ctx != null)
+					subcontexts[index] = ctx;
+				else {
+					numSubcontexts--;
+					System.arraycopy(subcontextSymbols, index + 1, subcontextSymbols, index, numSubcontexts - index);
+					System.arraycopy(subcontexts, index + 1, subcontexts, index, numSubcontexts - index);
+					subcontexts[numSubcontexts] = null;
+				}
+			} else if (ctx != null) {
+				index = ~index;
+				if (numSubcontexts == MAX_SPARSE_SYMBOLS) {
+					Context[] dense = new Context[frequencies.getSymbolLimit()];
+					for (int i = 0; i < numSubcontexts; i++)
+						dense[subcontextSymbols[i]] = subcontexts[i];
+					dense[symbol] = ctx;
+					subcontextSymbols = null;
+					subcontexts = dense;
+					numSubcontexts++;
+					denseSubcontexts = true;
+					return;
+				}
+				if (subcontexts == null) {
+					subcontextSymbols = new int[2];
+					subcontexts = new Context[2];
+				} else if (numSubcontexts == subcontexts.length) {
+					subcontextSymbols = Arrays.copyOf(subcontextSymbols, numSubcontexts * 2);
+					subcontexts = Arrays.copyOf(subcontexts, numSubcontexts * 2);
+				}
+				System.arraycopy(subcontextSymbols, index, subcontextSymbols, index + 1, numSubcontexts - index);
+				System.arraycopy(subcontexts, index, subcontexts, index + 1, numSubcontexts - index);
+				subcontextSymbols[index] = symbol;
+				subcontexts[index] = ctx;
+				numSubcontexts++;
+			}
+		}
+		
+		
+		// Resets this context to the state of a newly created one, discarding all its subcontexts.
+		void clear() {
+			reset(frequencies.getSymbolLimit());
+		}
+		
+		
+		private void reset(int symbols) {
+			if (dense) {
+				frequencies = new FenwickFrequencyTable(new int[symbols]);
+				subcontexts = hasSubcontexts ? new Context[symbols] : null;
+			} else {
+				frequencies = new SparseFrequencyTable(symbols);
 				subcontexts = null;
+			}
+			subcontextSymbols = null;
+			numSubcontexts = 0;
+			denseSubcontexts = dense && hasSubcontexts;
+			numDistinct = 0;
+			numSingletons = 0;
+			seenSymbols = null;
+		}
+		
+		
+		// Switches to a dense frequency table if the sparse one has grown too large. Call this after each update.
+		void checkDensity() {
+			if (frequencies instanceof SparseFrequencyTable
+					&& ((SparseFrequencyTable)frequencies).getNumPresent() > MAX_SPARSE_SYMBOLS)
+				frequencies = new FenwickFrequencyTable(frequencies);
+		}
+		
+		
+		// Returns the index of the given symbol in subcontextSymbols, or ~insertionPoint if it is absent.
+		private int indexOfSubcontext(int symbol) {
+			if (subcontexts == null)
+				return ~0;
+			return Arrays.binarySearch(subcontextSymbols, 0, numSubcontexts, symbol);
 		}
 		
 	}
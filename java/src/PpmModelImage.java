@@ -0,0 +1,302 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * A trained off-heap PPM model saved in a file, which primes new models so that short inputs compress well from
+ * the first byte. The file is memory-mapped read-only, so opening it is cheap and the pages are shared by every
+ * process that maps it. A compressed stream that was coded with a primed model records the model id, and
+ * the decompressor must be given the same image. A primed model does not copy the image, but only the contexts
+ * it changes, so that many short inputs can be coded concurrently against one image at little cost per input.
+ * The model file consists of these big-endian ints:
+ * <ul>
+ *   <li>The magic number 0x50504D49 ("PPMI") and the format version 1</li>
+ *   <li>The model id, as a 64-bit integer (2 ints) that is never 0</li>
+ *   <li>The model order, the escape method ordinal, the flags (bit 0 means SEE), and the symbol limit</li>
+ *   <li>The offset of the root context, the number of contexts, and the number of arena ints</li>
+ *   <li>The number of SEE state ints, followed by the SEE state (see {@link SecondaryEscapeEstimator#getState()})</li>
+ *   <li>The arena ints (see {@link PpmArena#write(java.io.DataOutput)})</li>
+ * </ul>
+ * <p>The model id is a 64-bit FNV-1a hash of all the ints after it, so different models get different ids
+ * with overwhelming probability, and a file whose contents do not match its id is rejected when it is mapped.
+ * The file must still be trusted, because the arena contents are not otherwise validated.</p>
+ */
+final class PpmModelImage {
+	
+	/*---- Constants ----*/
+	
+	private static final int MAGIC = 0x50504D49;
+	
+	private static final int VERSION = 1;
+	
+	// The number of ints before the SEE state.
+	private static final int HEADER_INTS = 12;
+	
+	// The default size of the private arena of a primed model.
+	private static final long DEFAULT_OVERLAY_BYTES = 1 << 20;
+	
+	
+	
+	/*---- Fields ----*/
+	
+	private final long modelId;
+	
+	private final int order;
+	
+	private final PpmEscapeMethod escapeMethod;
+	
+	private final boolean seeEnabled;
+	
+	private final int symbolLimit;
+	
+	private final int rootOffset;
+	
+	private final int numContexts;
+	
+	// The SEE state, or null if SEE is not enabled.
+	private final int[] seeState;
+	
+	// A read-only view of the arena ints in the mapped file.
+	private final IntBuffer arenaInts;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	private PpmModelImage(long modelId, int order, PpmEscapeMethod escapeMethod, boolean seeEnabled,
+			int symbolLimit, int rootOffset, int numContexts, int[] seeState, IntBuffer arenaInts) {
+		this.modelId = modelId;
+		this.order = order;
+		this.escapeMethod = escapeMethod;
+		this.seeEnabled = seeEnabled;
+		this.symbolLimit = symbolLimit;
+		this.rootOffset = rootOffset;
+		this.numContexts = numContexts;
+		this.seeState = seeState;
+		this.arenaInts = arenaInts;
+	}
+	
+	
+	
+	/*---- Static functions ----*/
+	
+	/**
+	 * Saves the specified off-heap model to the specified file. The model's current
+	 * history is not saved, so a primed model starts with an empty history.
+	 * @param model the model to save, which must be off-heap
+	 * @param file the file to write
+	 * @throws IllegalArgumentException if the model is not off-heap
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public static void write(PpmModel model, File file) throws IOException {
+		PpmArena arena = model.getArena();
+		if (arena == null)
+			throw new IllegalArgumentException("Only an off-heap model can be saved");
+		SecondaryEscapeEstimator see = model.getSee();
+		int[] seeState = see != null ? see.getState() : new int[0];
+		int[] fields = {
+			model.modelOrder, model.escapeMethod.ordinal(), see != null ? 1 : 0, model.getSymbolLimit(),
+			model.getArenaRoot(), arena.getNumContexts(), arena.getNumInts(), seeState.length,
+		};
+		
+		// Hash everything that follows the id, which is the only way to get the arena ints without copying them
+		Fnv1a hasher = new Fnv1a();
+		DataOutputStream hashOut = new DataOutputStream(hasher);
+		for (int x : fields)
+			hashOut.writeInt(x);
+		for (int x : seeState)
+			hashOut.writeInt(x);
+		arena.write(hashOut);
+		long id = hasher.getId();
+		
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(id);
+			for (int x : fields)
+				out.writeInt(x);
+			for (int x : seeState)
+				out.writeInt(x);
+			arena.write(out);
+		}
+	}
+	
+	
+	/**
+	 * Memory-maps the specified model file read-only and returns the model image. The whole file is read once
+	 * to check that the model id matches the contents, so that a corrupt or edited file is rejected here instead
+	 * of decoding wrongly. The mapping stays valid after this method returns, even though the file is closed.
+	 * @param file the model file to map
+	 * @return the model image (not {@code null})
+	 * @throws IOException if an I/O exception occurred or the file is not a valid model file
+	 */
+	public static PpmModelImage map(File file) throws IOException {
+		ByteBuffer bytes;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_INTS * 4)
+				throw new IOException("Invalid model file size");
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		IntBuffer ints = bytes.order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+		if (ints.get(0) != MAGIC || ints.get(1) != VERSION)
+			throw new IOException("Not a model file of a supported version");
+		long id = (long)ints.get(2) << 32 | (ints.get(3) & 0xFFFFFFFFL);
+		int order = ints.get(4);
+		int method = ints.get(5);
+		int flags = ints.get(6);
+		int symbolLimit = ints.get(7);
+		int root = ints.get(8);
+		int numContexts = ints.get(9);
+		int numInts = ints.get(10);
+		int numSeeInts = ints.get(11);
+		if (id == 0 || !(0 <= order && order <= PpmOptions.MAX_ORDER) || (flags & ~1) != 0 || symbolLimit < 1
+				|| numContexts < 1 || numSeeInts < 0 || !(0 < root && root < numInts)
+				|| (long)HEADER_INTS + numSeeInts + numInts != ints.limit() || ((flags & 1) != 0) != (numSeeInts > 0))
+			throw new IOException("Invalid model file header");
+		PpmEscapeMethod escapeMethod;
+		try {
+			escapeMethod = PpmEscapeMethod.fromOrdinal(method);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid model file header", e);
+		}
+		Fnv1a hasher = new Fnv1a();
+		for (int i = 4 * 4; i < bytes.limit(); i++)  // Every byte after the magic number, version and id
+			hasher.write(bytes.get(i));
+		if (hasher.getId() != id)
+			throw new IOException("Model file is corrupt, because its contents do not match its id");
+		
+		int[] seeState = null;
+		if (numSeeInts > 0) {
+			seeState = new int[numSeeInts];
+			ints.position(HEADER_INTS);
+			ints.get(seeState);
+		}
+		ints.position(HEADER_INTS + numSeeInts);
+		IntBuffer arenaInts = ints.slice().asReadOnlyBuffer();
+		return new PpmModelImage(id, order, escapeMethod, seeState != null,
+			symbolLimit, root, numContexts, seeState, arenaInts);
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	public long getModelId() {
+		return modelId;
+	}
+	
+	
+	public int getOrder() {
+		return order;
+	}
+	
+	
+	public PpmEscapeMethod getEscapeMethod() {
+		return escapeMethod;
+	}
+	
+	
+	public boolean isSeeEnabled() {
+		return seeEnabled;
+	}
+	
+	
+	public int getSymbolLimit() {
+		return symbolLimit;
+	}
+	
+	
+	public int getRootOffset() {
+		return rootOffset;
+	}
+	
+	
+	public int getNumContexts() {
+		return numContexts;
+	}
+	
+	
+	/**
+	 * Returns a copy of the SEE state, or {@code null} if SEE is not enabled.
+	 * @return the SEE state or {@code null}
+	 */
+	public int[] getSeeState() {
+		return seeState != null ? seeState.clone() : null;
+	}
+	
+	
+	/**
+	 * Returns a new read-only view of the arena ints, which are still in the mapped file.
+	 * @return the arena ints (not {@code null})
+	 */
+	public IntBuffer getArenaInts() {
+		return arenaInts.duplicate();
+	}
+	
+	
+	/**
+	 * Returns the number of bytes that the arena of the image occupies.
+	 * @return the arena size in bytes
+	 */
+	public long getArenaBytes() {
+		return arenaInts.capacity() * 4L;
+	}
+	
+	
+	/**
+	 * Changes the specified options to code with a model primed by this image: the order, escape method and
+	 * SEE are set to those of the image, the contexts are made off-heap, and the model id is set. The memory
+	 * limit is the size of each model's private arena for the contexts it changes (see {@link PpmModel#prime(PpmModelImage)}),
+	 * and if it is too small for one update, it is raised to 1 MiB or the minimum, whichever is larger.
+	 * @param options the options to change
+	 * @return the options
+	 */
+	public PpmOptions applyTo(PpmOptions options) {
+		options.setOrder(order).setEscapeMethod(escapeMethod).setSeeEnabled(seeEnabled)
+			.setOffHeap(true).setModelId(modelId);
+		long minimum = PpmArena.getMinimumOverlayBytes(order, symbolLimit);
+		if (options.getMemoryLimit() < minimum)
+			options.setMemoryLimit(Math.max(minimum, DEFAULT_OVERLAY_BYTES));
+		return options;
+	}
+	
+	
+	
+	/*---- Helper class ----*/
+	
+	// Computes the 64-bit FNV-1a hash of the bytes written to it.
+	private static final class Fnv1a extends OutputStream {
+		
+		public long hash = 0xCBF29CE484222325L;
+		
+		
+		public void write(int b) {
+			hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+		}
+		
+		
+		// Returns the model id for the bytes so far, which is the hash except that 0 becomes 1.
+		public long getId() {
+			return hash != 0 ? hash : 1;
+		}
+		
+	}
+	
+}
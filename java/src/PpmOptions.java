@@ -0,0 +1,321 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.IOException;
+import java.util.Objects;
+
+
+/**
+ * The parameters of a PPM model that the compressor chooses and the decompressor must reproduce.
+ * They are written at the start of the compressed stream, so the decompressor can allocate
+ * the same model without being told the parameters separately.
+ * <p>The header consists of these unsigned integer fields, in order:</p>
+ * <ul>
+ *   <li>8 bits: The header version, currently 1, which changes whenever fields are added or changed</li>
+ *   <li>8 bits: The escape method, as the ordinal of {@link PpmEscapeMethod}</li>
+ *   <li>8 bits: Flags, where bit 0 means that SEE is used, bit 1 means that the contexts
+ *     are kept off-heap, and the other bits are zero</li>
+ *   <li>8 bits: The model order plus 1</li>
+ *   <li>64 bits: The memory limit in bytes, where 0 means unlimited</li>
+ *   <li>8 bits: The budget policy, as the ordinal of {@link PpmBudgetPolicy}</li>
+ *   <li>32 bits: The node limit of the context trie, where 0 means unlimited</li>
+ *   <li>64 bits: The id of the model image that primes the model (see {@link PpmModelImage}), or 0 for none</li>
+ * </ul>
+ */
+final class PpmOptions {
+	
+	/*---- Constants ----*/
+	
+	public static final int DEFAULT_ORDER = 3;
+	
+	public static final PpmEscapeMethod DEFAULT_ESCAPE_METHOD = PpmEscapeMethod.C;
+	
+	public static final PpmBudgetPolicy DEFAULT_BUDGET_POLICY = PpmBudgetPolicy.RESTART;
+	
+	// The version of the header layout, written first so that a decompressor can reject other layouts.
+	public static final int HEADER_VERSION = 1;
+	
+	// The highest order that fits in the header.
+	public static final int MAX_ORDER = 254;
+	
+	// The largest memory limit that read(BitInputStream) accepts, because the model allocates
+	// its memory up front, before a single symbol shows whether the stream is genuine.
+	public static final long DEFAULT_MAX_READ_MEMORY = 1L << 30;
+	
+	
+	
+	/*---- Fields ----*/
+	
+	private int order;
+	
+	private long memoryLimit;
+	
+	private PpmEscapeMethod escapeMethod;
+	
+	private boolean seeEnabled;
+	
+	private boolean offHeap;
+	
+	private int nodeLimit;
+	
+	private PpmBudgetPolicy budgetPolicy;
+	
+	private long modelId;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs a set of options with the default values: order 3, unlimited memory,
+	 * escape method C, no SEE, and no node limit (with the restart policy if a limit is set).
+	 */
+	public PpmOptions() {
+		order = DEFAULT_ORDER;
+		memoryLimit = 0;
+		escapeMethod = DEFAULT_ESCAPE_METHOD;
+		seeEnabled = false;
+		offHeap = false;
+		nodeLimit = 0;
+		budgetPolicy = DEFAULT_BUDGET_POLICY;
+		modelId = 0;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	public int getOrder() {
+		return order;
+	}
+	
+	
+	/**
+	 * Sets the model order, which is the number of history symbols in the longest context.
+	 * Warning: Without a memory limit, the memory usage is exponential at O(257^order).
+	 * @param order the model order, in the range [-1, 254]
+	 * @return this object
+	 * @throws IllegalArgumentException if the order is out of range
+	 */
+	public PpmOptions setOrder(int order) {
+		if (!(-1 <= order && order <= MAX_ORDER))
+			throw new IllegalArgumentException("Order out of range");
+		this.order = order;
+		return this;
+	}
+	
+	
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+	
+	
+	/**
+	 * Sets the approximate number of bytes that the contexts may use, or 0 for no limit. A positive limit
+	 * stores the contexts in a hash table (see {@link PpmHashStore}), which requires an order of at most 8,
+	 * or in an off-heap arena of exactly this size if {@link #setOffHeap(boolean)} is enabled. For a primed model,
+	 * the arena only holds the contexts that the model changes, because the image itself is shared.
+	 * @param memoryLimit the memory limit in bytes, at least 0
+	 * @return this object
+	 * @throws IllegalArgumentException if the memory limit is negative
+	 */
+	public PpmOptions setMemoryLimit(long memoryLimit) {
+		if (memoryLimit < 0)
+			throw new IllegalArgumentException("Negative memory limit");
+		this.memoryLimit = memoryLimit;
+		return this;
+	}
+	
+	
+	public PpmEscapeMethod getEscapeMethod() {
+		return escapeMethod;
+	}
+	
+	
+	public PpmOptions setEscapeMethod(PpmEscapeMethod escapeMethod) {
+		this.escapeMethod = Objects.requireNonNull(escapeMethod);
+		return this;
+	}
+	
+	
+	public boolean isSeeEnabled() {
+		return seeEnabled;
+	}
+	
+	
+	public PpmOptions setSeeEnabled(boolean seeEnabled) {
+		this.seeEnabled = seeEnabled;
+		return this;
+	}
+	
+	
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+	
+	
+	/**
+	 * Sets whether the contexts are kept in an off-heap arena (see {@link PpmArena}) whose size is the memory limit,
+	 * which must then be positive. This suits large models, because the garbage collector never scans the contexts.
+	 * The budget policy is applied when the arena is nearly full, and also at the node limit if there is one.
+	 * @param offHeap whether the contexts are off-heap
+	 * @return this object
+	 */
+	public PpmOptions setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+		return this;
+	}
+	
+	
+	public int getNodeLimit() {
+		return nodeLimit;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of contexts in the trie, or 0 for no limit. When the limit is reached,
+	 * the budget policy decides what happens. A node limit can't be combined with a memory limit unless
+	 * the contexts are off-heap, because the hash table of an on-heap memory-limited model has a fixed
+	 * size and evicts contexts itself.
+	 * @param nodeLimit the node limit, at least 0
+	 * @return this object
+	 * @throws IllegalArgumentException if the node limit is negative
+	 */
+	public PpmOptions setNodeLimit(int nodeLimit) {
+		if (nodeLimit < 0)
+			throw new IllegalArgumentException("Negative node limit");
+		this.nodeLimit = nodeLimit;
+		return this;
+	}
+	
+	
+	public PpmBudgetPolicy getBudgetPolicy() {
+		return budgetPolicy;
+	}
+	
+	
+	public PpmOptions setBudgetPolicy(PpmBudgetPolicy budgetPolicy) {
+		this.budgetPolicy = Objects.requireNonNull(budgetPolicy);
+		return this;
+	}
+	
+	
+	public long getModelId() {
+		return modelId;
+	}
+	
+	
+	/**
+	 * Sets the id of the model image that the model is primed with, or 0 for an unprimed model. A primed
+	 * model must be off-heap. See {@link PpmModelImage#applyTo(PpmOptions)}, which sets all the related options.
+	 * @param modelId the model id, or 0
+	 * @return this object
+	 */
+	public PpmOptions setModelId(long modelId) {
+		this.modelId = modelId;
+		return this;
+	}
+	
+	
+	/**
+	 * Returns a new PPM model over 257 symbols (where 256 is the escape and EOF symbol) with these options.
+	 * @return a new model (not {@code null})
+	 * @throws IllegalArgumentException if the combination of options is invalid
+	 */
+	public PpmModel newModel() {
+		return new PpmModel(this, 257, 256);
+	}
+	
+	
+	/**
+	 * Writes these options as a stream header to the specified bit output stream.
+	 * @param out the bit output stream to write to
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void write(BitOutputStream out) throws IOException {
+		out.writeBits(8, HEADER_VERSION);
+		out.writeBits(8, escapeMethod.ordinal());
+		out.writeBits(8, (seeEnabled ? 1 : 0) | (offHeap ? 2 : 0));
+		out.writeBits(8, order + 1);
+		out.writeBits(64, memoryLimit);
+		out.writeBits(8, budgetPolicy.ordinal());
+		out.writeBits(32, nodeLimit);
+		out.writeBits(64, modelId);
+	}
+	
+	
+	/**
+	 * Reads a stream header from the specified bit input stream and returns the options, accepting a memory
+	 * limit of at most 1 GiB. This is equivalent to {@code read(in, DEFAULT_MAX_READ_MEMORY)}.
+	 * @param in the bit input stream to read from
+	 * @return the options read (not {@code null})
+	 * @throws IOException if an I/O exception occurred or the header is invalid
+	 */
+	public static PpmOptions read(BitInputStream in) throws IOException {
+		return read(in, DEFAULT_MAX_READ_MEMORY);
+	}
+	
+	
+	/**
+	 * Reads a stream header from the specified bit input stream and returns the options. The combination
+	 * of options is validated too, so that the caller can use {@link #newModel()} on the result. A memory
+	 * limit above the specified maximum is rejected, so that a corrupt or crafted header cannot make the
+	 * decompressor allocate a huge model.
+	 * @param in the bit input stream to read from
+	 * @param maxMemoryLimit the largest memory limit to accept, at least 0
+	 * @return the options read (not {@code null})
+	 * @throws IllegalArgumentException if the maximum is negative
+	 * @throws IOException if an I/O exception occurred or the header is invalid
+	 */
+	public static PpmOptions read(BitInputStream in, long maxMemoryLimit) throws IOException {
+		if (maxMemoryLimit < 0)
+			throw new IllegalArgumentException("Negative maximum memory limit");
+		if (in.readBits(8) != HEADER_VERSION)
+			throw new IOException("Unsupported stream header version");
+		int method = (int)in.readBits(8);
+		int flags = (int)in.readBits(8);
+		int order = (int)in.readBits(8) - 1;
+		long memoryLimit = in.readBits(64);
+		int policy = (int)in.readBits(8);
+		long nodeLimit = in.readBits(32);
+		long modelId = in.readBits(64);
+		if ((flags & ~3) != 0)
+			throw new IOException("Invalid flags in stream header");
+		if (nodeLimit > Integer.MAX_VALUE)
+			throw new IOException("Invalid node limit in stream header");
+		if (Long.compareUnsigned(memoryLimit, maxMemoryLimit) > 0)
+			throw new IOException(String.format("Stream needs a memory limit of %d bytes, above the maximum of %d",
+				memoryLimit, maxMemoryLimit));
+		try {
+			PpmOptions result = new PpmOptions()
+				.setEscapeMethod(PpmEscapeMethod.fromOrdinal(method))
+				.setSeeEnabled((flags & 1) != 0)
+				.setOffHeap((flags & 2) != 0)
+				.setOrder(order)
+				.setMemoryLimit(memoryLimit)
+				.setBudgetPolicy(PpmBudgetPolicy.fromOrdinal(policy))
+				.setNodeLimit((int)nodeLimit)
+				.setModelId(modelId);
+			if (modelId != 0 && !(result.offHeap && memoryLimit >= PpmArena.getMinimumOverlayBytes(order, 257)))
+				throw new IllegalArgumentException("Primed model must be off-heap with room for copies");
+			if (result.offHeap) {
+				if (!(memoryLimit >= PpmArena.getMinimumBytes(order, 257) && memoryLimit <= PpmArena.MAX_BYTES))
+					throw new IllegalArgumentException("Memory limit out of range for an off-heap model");
+			} else {
+				if (memoryLimit > 0 && order > PpmHashStore.MAX_ORDER)
+					throw new IllegalArgumentException("Order too large for a bounded memory model");
+				if (memoryLimit > 0 && nodeLimit > 0)
+					throw new IllegalArgumentException("Node limit with a bounded memory model");
+			}
+			return result;
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid stream header", e);
+		}
+	}
+	
+}
@@ -0,0 +1,81 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+ * Training application that builds a PPM model file for priming the "PpmCompress" and "PpmDecompress" applications.
+ * <p>Usage: java PpmTrain [-order N] [-memory Bytes] [-escape A|B|C|D|X] [-see] [-policy RESTART|FREEZE|PRUNE] CorpusFile ModelFile</p>
+ * <p>The model learns from the corpus exactly as if the corpus were being compressed, and then its contexts
+ * are saved to the model file (see {@link PpmModelImage}). The corpus should resemble the data to be compressed,
+ * such as a sample of typical messages. The model is always off-heap, and the memory limit (64 MiB by default)
+ * bounds the size of the model file. The budget policy is PRUNE by default, so that a large corpus keeps
+ * the most frequent contexts instead of only the ones after the last restart.</p>
+ */
+public final class PpmTrain {
+	
+	public static void main(String[] args) throws IOException {
+		// Handle command line arguments
+		PpmOptions options = new PpmOptions()
+			.setOffHeap(true)
+			.setMemoryLimit(1L << 26)
+			.setBudgetPolicy(PpmBudgetPolicy.PRUNE);
+		int i = 0;
+		for (; i < args.length - 2; i++) {
+			String arg = args[i];
+			if (arg.equals("-see"))
+				options.setSeeEnabled(true);
+			else if (i + 1 < args.length - 2 && arg.equals("-order"))
+				options.setOrder(Integer.parseInt(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-memory"))
+				options.setMemoryLimit(Long.parseLong(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-escape"))
+				options.setEscapeMethod(PpmEscapeMethod.valueOf(args[++i]));
+			else if (i + 1 < args.length - 2 && arg.equals("-policy"))
+				options.setBudgetPolicy(PpmBudgetPolicy.valueOf(args[++i]));
+			else
+				break;
+		}
+		args = Arrays.copyOfRange(args, i, args.length);
+		if (args.length != 2) {
+			System.err.println("Usage: java PpmTrain [-order N] [-memory Bytes] [-escape A|B|C|D|X] [-see] [-policy RESTART|FREEZE|PRUNE] CorpusFile ModelFile");
+			System.exit(1);
+			return;
+		}
+		File corpusFile = new File(args[0]);
+		File modelFile  = new File(args[1]);
+		
+		// Perform training
+		try (InputStream in = new BufferedInputStream(new FileInputStream(corpusFile))) {
+			PpmModelImage.write(train(in, options), modelFile);
+		}
+	}
+	
+	
+	// Returns a new off-heap model with the given options that has learned from all the bytes of the given input.
+	// To allow unit testing, this method is package-private instead of private.
+	static PpmModel train(InputStream in, PpmOptions options) throws IOException {
+		if (!options.isOffHeap())
+			throw new IllegalArgumentException("Only an off-heap model can be trained");
+		PpmModel model = options.newModel();
+		// The coded output is discarded, because only the model's statistics are wanted
+		BitOutputStream out = new BitOutputStream(new OutputStream() {
+			public void write(int b) {}
+		});
+		PpmCompress.encode(in, model, out);
+		return model;
+	}
+	
+}
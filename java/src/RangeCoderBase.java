@@ -0,0 +1,98 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+
+/**
+ * Provides the state and behaviors that range coding encoders and decoders share.
+ * <p>A range coder is a variant of arithmetic coding that renormalizes a whole byte at a time instead of a
+ * single bit, and resolves the case where low and high straddle a byte boundary by propagating a carry into
+ * the already-produced bytes instead of counting underflow bits. This makes it considerably faster than
+ * {@link ArithmeticCoderBase}, at the cost of a slightly different and incompatible output format.</p>
+ * @see RangeEncoder
+ * @see RangeDecoder
+ */
+public abstract class RangeCoderBase {
+	
+	/*---- Configuration constants ----*/
+	
+	/** Number of bits for the 'low' and 'range' state variables, which is a multiple of 8. */
+	protected static final int NUM_STATE_BITS = 56;
+	
+	/** Maximum range during coding (trivial), which is 2^56 = 1000...000 (in 57 bits). */
+	protected static final long FULL_RANGE = 1L << NUM_STATE_BITS;
+	
+	/** Minimum range during coding (non-trivial). A byte is shifted out whenever the range falls below this. */
+	protected static final long BOTTOM_RANGE = FULL_RANGE >>> 8;
+	
+	/** Bit mask of NUM_STATE_BITS ones, which is 0111...111 (in 57 bits). */
+	protected static final long STATE_MASK = FULL_RANGE - 1;
+	
+	/**
+	 * Maximum allowed total from a frequency table at all times during coding. Because
+	 * range &ge; 2^48 and total &le; 2^31, every symbol with non-zero frequency is given a
+	 * sub-range of at least 2^17, and the approximation loss is negligible.
+	 */
+	protected static final long MAXIMUM_TOTAL = Integer.MAX_VALUE;
+	
+	
+	
+	/*---- State fields ----*/
+	
+	/**
+	 * Width of this range coder's current interval. Always in the range [BOTTOM_RANGE, FULL_RANGE]
+	 * between symbols. (The 'low' end of the interval exists only in the encoder.)
+	 */
+	protected long range;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs a range coder, which initializes the code range.
+	 */
+	public RangeCoderBase() {
+		range = FULL_RANGE;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the width of one unit of cumulative frequency in the current range,
+	 * after checking the specified frequency table total.
+	 * @param total the total of the frequency table to use
+	 * @return {@code range / total}, which is at least 1
+	 * @throws IllegalArgumentException if the total is zero or too large
+	 */
+	protected final long getScale(long total) {
+		if (total <= 0)
+			throw new IllegalArgumentException("Total must be positive");
+		if (total > MAXIMUM_TOTAL)
+			throw new IllegalArgumentException("Cannot code symbol because total is too large");
+		return range / total;
+	}
+	
+	
+	/**
+	 * Narrows the range to the specified symbol's sub-interval, given a scale from {@link #getScale(long)}.
+	 * The rounding remainder of the range is given to the topmost symbol rather than being wasted.
+	 * @param scale the scale computed for the current range and frequency table total
+	 * @param symLow the cumulative frequency of all symbols below the symbol
+	 * @param symHigh the cumulative frequency of the symbol and all symbols below
+	 * @param total the total of the frequency table
+	 */
+	protected final void narrow(long scale, long symLow, long symHigh, long total) {
+		if (symHigh < total)
+			range = scale * (symHigh - symLow);
+		else
+			range -= scale * symLow;
+	}
+	
+}
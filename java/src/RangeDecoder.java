@@ -0,0 +1,90 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+
+/**
+ * Reads from a range-coded byte stream and decodes symbols. Not thread-safe.
+ * @see RangeEncoder
+ */
+public final class RangeDecoder extends RangeCoderBase {
+	
+	/*---- Fields ----*/
+	
+	// The underlying byte input stream (not null).
+	private InputStream input;
+	
+	// The current raw code bytes minus the encoder's 'low', which is always in the range [0, range).
+	private long code;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs a range coding decoder based on the
+	 * specified byte input stream, and fills the code bytes.
+	 * @param in the byte input stream to read from
+	 * @throws NullPointerException if the input steam is {@code null}
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public RangeDecoder(InputStream in) throws IOException {
+		input = Objects.requireNonNull(in);
+		code = 0;
+		for (int i = 0; i < NUM_STATE_BITS / 8; i++)
+			code = code << 8 | readCodeByte();
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Decodes the next symbol based on the specified frequency table and returns it.
+	 * Also updates this range coder's state and may read in some bytes.
+	 * @param freqs the frequency table to use
+	 * @return the next symbol
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 * @throws IllegalArgumentException if the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public int read(FrequencyTable freqs) throws IOException {
+		// Translate from coding range scale to frequency table scale
+		long total = freqs.getTotal();
+		long scale = getScale(total);
+		long value = Math.min(code / scale, total - 1);  // The topmost symbol also owns the rounding remainder
+		
+		// Find highest symbol such that freqs.getLow(symbol) <= value, using the table's fastest search
+		int symbol = freqs.getSymbol((int)value);
+		
+		long symLow = freqs.getLow(symbol);
+		code -= scale * symLow;
+		narrow(scale, symLow, freqs.getHigh(symbol), total);
+		if (!(0 <= code && code < range))
+			throw new AssertionError("Code out of range");
+		while (range < BOTTOM_RANGE) {
+			code = (code << 8) | readCodeByte();
+			range <<= 8;
+		}
+		return symbol;
+	}
+	
+	
+	// Returns the next byte from the input stream. The end of
+	// stream is treated as an infinite number of trailing zeros.
+	private int readCodeByte() throws IOException {
+		int temp = input.read();
+		if (temp == -1)
+			temp = 0;
+		return temp;
+	}
+	
+}
@@ -0,0 +1,118 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+
+/**
+ * Encodes symbols and writes to a range-coded byte stream. Not thread-safe.
+ * @see RangeDecoder
+ */
+public final class RangeEncoder extends RangeCoderBase {
+	
+	/*---- Fields ----*/
+	
+	// The underlying byte output stream (not null).
+	private OutputStream output;
+	
+	// Low end of this range coder's current interval, in the range [0, 2 * FULL_RANGE).
+	// Bit NUM_STATE_BITS is the carry that still needs to be added to the bytes already shifted out.
+	private long low;
+	
+	// The most recent byte shifted out that can still be changed by a carry, in the range [0x00, 0xFF],
+	// or -1 if no byte has been shifted out yet. It has not been written to the output stream.
+	private int cache;
+	
+	// Number of 0xFF bytes that follow the cached byte and have not been written to the output stream.
+	// A carry would turn them all into 0x00. This value can grow without bound on pathological input,
+	// so a truly correct implementation would use a BigInteger.
+	private long numPendingFF;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs a range coding encoder based on the specified byte output stream.
+	 * @param out the byte output stream to write to
+	 * @throws NullPointerException if the output stream is {@code null}
+	 */
+	public RangeEncoder(OutputStream out) {
+		output = Objects.requireNonNull(out);
+		low = 0;
+		cache = -1;
+		numPendingFF = 0;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Encodes the specified symbol based on the specified frequency table.
+	 * This updates this range coder's state and may write out some bytes.
+	 * @param freqs the frequency table to use
+	 * @param symbol the symbol to encode
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 * @throws IllegalArgumentException if the symbol has zero frequency
+	 * or the frequency table's total is too large
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void write(FrequencyTable freqs, int symbol) throws IOException {
+		long total = freqs.getTotal();
+		long scale = getScale(total);
+		long symLow = freqs.getLow(symbol);
+		long symHigh = freqs.getHigh(symbol);
+		if (symLow == symHigh)
+			throw new IllegalArgumentException("Symbol has zero frequency");
+		
+		low += scale * symLow;
+		narrow(scale, symLow, symHigh, total);
+		while (range < BOTTOM_RANGE) {
+			shiftLow();
+			range <<= 8;
+		}
+	}
+	
+	
+	/**
+	 * Terminates the range coding by flushing any buffered bytes, so that the output can be decoded properly.
+	 * It is important that this method must be called at the end of the each encoding process.
+	 * <p>Note that this method merely writes data to the underlying output stream but does not close it.</p>
+	 * @throws IOException if an I/O exception occurred
+	 */
+	public void finish() throws IOException {
+		// Pick the value in [low, low + range) with the most trailing zero bits. Because range is at least
+		// BOTTOM_RANGE, only the top byte is non-zero, and the decoder treats end of stream as zeros.
+		low = (low + BOTTOM_RANGE - 1) & -BOTTOM_RANGE;
+		shiftLow();
+		shiftLow();  // Flushes the cached byte and any pending 0xFF bytes
+	}
+	
+	
+	// Shifts the top byte of 'low' out, either holding it back (if a future
+	// carry can still change it) or writing out all the bytes that are now final.
+	private void shiftLow() throws IOException {
+		int top = (int)(low >>> (NUM_STATE_BITS - 8));  // In the range [0x000, 0x1FF]
+		if (top != 0xFF) {
+			int carry = top >>> 8;
+			if (cache != -1)
+				output.write(cache + carry);
+			else if (carry != 0)
+				throw new AssertionError("Carry out of the first byte");
+			for (; numPendingFF > 0; numPendingFF--)
+				output.write(0xFF + carry);  // The byte value wraps around to 0x00 on a carry
+			cache = top & 0xFF;
+		} else
+			numPendingFF++;
+		low = (low << 8) & STATE_MASK;
+	}
+	
+}
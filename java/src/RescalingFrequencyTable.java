@@ -0,0 +1,117 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.Objects;
+
+
+/**
+ * A wrapper that ages the statistics of an adaptive frequency table. Whenever an increment makes the total reach
+ * the configured limit, every frequency is halved (rounding up, so that no non-zero frequency becomes zero).
+ * This keeps the total bounded so that a stream of any length can be coded, and makes the model give
+ * more weight to recent symbols. Only {@link #increment(int)} triggers rescaling, not {@link #set(int, int)}.
+ * <p>The rescaling is deterministic, so an encoder and decoder that apply the same sequence of increments
+ * with the same limit stay synchronized.</p>
+ */
+public final class RescalingFrequencyTable implements FrequencyTable {
+	
+	/*---- Fields ----*/
+	
+	// The underlying frequency table that holds the data (not null).
+	private FrequencyTable freqTable;
+	
+	// The total that triggers a rescaling, which is at least 2 * getSymbolLimit().
+	private final int limit;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs a rescaling frequency table that wraps the specified mutable frequency table. The limit must be
+	 * at least twice the number of symbols, which guarantees that each rescaling brings the total below the limit.
+	 * @param freqs the underlying frequency table, which is modified by this object
+	 * @param limit the total at which the frequencies are halved
+	 * @throws NullPointerException if the frequency table is {@code null}
+	 * @throws IllegalArgumentException if {@code limit} &lt; 2 &times; {@code freqs.getSymbolLimit()}
+	 */
+	public RescalingFrequencyTable(FrequencyTable freqs, int limit) {
+		freqTable = Objects.requireNonNull(freqs);
+		if (limit / 2 < freqs.getSymbolLimit())
+			throw new IllegalArgumentException("Limit too small for the number of symbols");
+		this.limit = limit;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the total at which the frequencies are halved.
+	 * @return the rescaling limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+	
+	
+	public int getSymbolLimit() {
+		return freqTable.getSymbolLimit();
+	}
+	
+	
+	public int get(int symbol) {
+		return freqTable.get(symbol);
+	}
+	
+	
+	public void set(int symbol, int freq) {
+		freqTable.set(symbol, freq);
+	}
+	
+	
+	/**
+	 * Increments the frequency of the specified symbol, and then halves all the
+	 * frequencies (rounding up) if the total has reached the limit.
+	 * @param symbol the symbol whose frequency to increment
+	 * @throws IllegalArgumentException if the symbol is out of range
+	 * @throws ArithmeticException if an arithmetic overflow occurs
+	 */
+	public void increment(int symbol) {
+		freqTable.increment(symbol);
+		if (freqTable.getTotal() >= limit) {
+			for (int i = 0; i < freqTable.getSymbolLimit(); i++)
+				freqTable.set(i, (freqTable.get(i) + 1) >>> 1);
+		}
+	}
+	
+	
+	public int getTotal() {
+		return freqTable.getTotal();
+	}
+	
+	
+	public int getLow(int symbol) {
+		return freqTable.getLow(symbol);
+	}
+	
+	
+	public int getHigh(int symbol) {
+		return freqTable.getHigh(symbol);
+	}
+	
+	
+	public int getSymbol(int value) {
+		return freqTable.getSymbol(value);
+	}
+	
+	
+	public String toString() {
+		return "RescalingFrequencyTable (limit=" + limit + ") (" + freqTable.toString() + ")";
+	}
+	
+}
@@ -0,0 +1,202 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.Arrays;
+
+
+/**
+ * Secondary escape estimation (SEE) for a PPM model. Instead of deriving the escape frequency of a
+ * context from its own counts with a fixed formula, the contexts are grouped into bins by a few small
+ * features (order, number of distinct symbols, average count, and whether any symbol is excluded yet).
+ * Each bin learns the escape probability online from the escapes actually coded by the contexts in it.
+ * <p>Usage: For each context that a symbol is coded in, call {@link #getEscapeFrequency(int, int, int, boolean, int)}
+ * just before coding, and {@link #markEscape()} if the escape symbol was coded. After the symbol is done, call
+ * {@link #update()} to train the bins. The behavior is deterministic, so a compressor and decompressor
+ * that make the same calls stay synchronized. Not thread-safe.</p>
+ */
+final class SecondaryEscapeEstimator {
+	
+	/*---- Constants ----*/
+	
+	// Escape probabilities are fixed-point numbers with this many fractional bits.
+	private static final int PROB_BITS = 16;
+	
+	// The probability of each bin is kept in [MIN_PROB, 2^PROB_BITS - MIN_PROB].
+	private static final int MIN_PROB = 1 << 6;
+	
+	// The adaptation rate of a bin is 1 / (visits + 2), until the visit count reaches this limit.
+	private static final int MAX_VISITS = 62;
+	
+	// The scaled symbol total that the escape frequency is computed against, for finer resolution.
+	private static final int MIN_SCALED_TOTAL = 1 << 12;
+	
+	// Upper bound on an escape frequency, to keep the coding total small.
+	private static final int MAX_ESCAPE_FREQ = 1 << 24;
+	
+	private static final int NUM_BINS = 4 * 2 * 8 * 4;
+	
+	
+	
+	/*---- Fields ----*/
+	
+	// The learned escape probability of each bin.
+	private final int[] probabilities;
+	
+	// The number of updates of each bin, saturating at MAX_VISITS.
+	private final int[] visits;
+	
+	// The bins used for the symbol being coded, in the order they were used, at indexes [0, numPending).
+	private final int[] pendingBins;
+	private final boolean[] pendingEscapes;
+	private int numPending;
+	
+	// The scale factor chosen by the latest call to getEscapeFrequency().
+	private int lastScale;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs an estimator where every bin starts with an escape probability of 1/4.
+	 * @param maxOrder the highest context order that will be queried, at least 0
+	 * @throws IllegalArgumentException if {@code maxOrder} &lt; 0
+	 */
+	public SecondaryEscapeEstimator(int maxOrder) {
+		if (maxOrder < 0)
+			throw new IllegalArgumentException();
+		probabilities = new int[NUM_BINS];
+		Arrays.fill(probabilities, 1 << (PROB_BITS - 2));
+		visits = new int[NUM_BINS];
+		pendingBins = new int[maxOrder + 1];
+		pendingEscapes = new boolean[maxOrder + 1];
+		numPending = 0;
+		lastScale = 1;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the escape frequency for a context with the specified features, relative to its remaining symbol
+	 * total multiplied by {@link #getScale()}, and remembers the context's bin for the next update.
+	 * @param order the order of the context, at least 0
+	 * @param numDistinct the number of distinct symbols seen in the context, at least 1
+	 * @param total the total frequency of the symbols in the context before exclusion, at least 1
+	 * @param isFirst whether no symbol has been excluded yet for the symbol being coded
+	 * @param remaining the total frequency of the symbols in the context that are not excluded, at least 1
+	 * @return the escape frequency, which is positive
+	 * @throws IllegalArgumentException if any argument is out of range
+	 * @throws IllegalStateException if more contexts are queried for one symbol than the maximum order plus 1
+	 */
+	public int getEscapeFrequency(int order, int numDistinct, int total, boolean isFirst, int remaining) {
+		if (order < 0 || numDistinct < 1 || total < 1 || remaining < 1)
+			throw new IllegalArgumentException();
+		if (numPending == pendingBins.length)
+			throw new IllegalStateException("Too many contexts for one symbol");
+		int bin = getBin(order, numDistinct, total, isFirst);
+		pendingBins[numPending] = bin;
+		pendingEscapes[numPending] = false;
+		numPending++;
+		
+		lastScale = Math.max((MIN_SCALED_TOTAL + remaining - 1) / remaining, 1);
+		long scaledTotal = (long)remaining * lastScale;
+		int p = probabilities[bin];
+		long result = (scaledTotal * p + (1 << PROB_BITS) - p - 1) / ((1 << PROB_BITS) - p);  // Rounded up, so it is positive
+		return (int)Math.min(result, MAX_ESCAPE_FREQ);
+	}
+	
+	
+	/**
+	 * Returns the factor that the symbol frequencies must be multiplied by for the latest escape frequency.
+	 * @return the scale factor, which is at least 1
+	 */
+	public int getScale() {
+		return lastScale;
+	}
+	
+	
+	/**
+	 * Records that the escape symbol was coded in the context of the latest query.
+	 * @throws IllegalStateException if no context has been queried since the last update
+	 */
+	public void markEscape() {
+		if (numPending == 0)
+			throw new IllegalStateException();
+		pendingEscapes[numPending - 1] = true;
+	}
+	
+	
+	/**
+	 * Trains the bins of all the contexts queried since the last update, and forgets them.
+	 */
+	public void update() {
+		for (int i = 0; i < numPending; i++) {
+			int bin = pendingBins[i];
+			int target = pendingEscapes[i] ? (1 << PROB_BITS) : 0;
+			int p = probabilities[bin] + (target - probabilities[bin]) / (visits[bin] + 2);
+			probabilities[bin] = Math.max(Math.min(p, (1 << PROB_BITS) - MIN_PROB), MIN_PROB);
+			if (visits[bin] < MAX_VISITS)
+				visits[bin]++;
+		}
+		numPending = 0;
+	}
+	
+	
+	/**
+	 * Returns the learned state of all the bins, for saving a trained model. Any pending contexts are ignored.
+	 * @return a new array of the probabilities of the bins followed by their visit counts
+	 */
+	public int[] getState() {
+		int[] result = Arrays.copyOf(probabilities, NUM_BINS * 2);
+		System.arraycopy(visits, 0, result, NUM_BINS, NUM_BINS);
+		return result;
+	}
+	
+	
+	/**
+	 * Replaces the learned state of all the bins with the specified state from {@link #getState()}.
+	 * @param state the state, with its length equal to that of the result of {@link #getState()}
+	 * @throws IllegalArgumentException if the length is wrong or any value is out of range
+	 */
+	public void setState(int[] state) {
+		if (state.length != NUM_BINS * 2)
+			throw new IllegalArgumentException();
+		for (int i = 0; i < NUM_BINS; i++) {
+			int p = state[i];
+			int v = state[NUM_BINS + i];
+			if (!(MIN_PROB <= p && p <= (1 << PROB_BITS) - MIN_PROB && 0 <= v && v <= MAX_VISITS))
+				throw new IllegalArgumentException("Invalid state");
+		}
+		System.arraycopy(state, 0, probabilities, 0, NUM_BINS);
+		System.arraycopy(state, NUM_BINS, visits, 0, NUM_BINS);
+		numPending = 0;
+	}
+	
+	
+	// Returns the bin index for the given context features.
+	private static int getBin(int order, int numDistinct, int total, boolean isFirst) {
+		int orderBucket = Math.min(order, 3);
+		int distinctBucket;
+		if (numDistinct <= 4)
+			distinctBucket = numDistinct - 1;
+		else if (numDistinct <= 7)
+			distinctBucket = 4;
+		else if (numDistinct <= 15)
+			distinctBucket = 5;
+		else if (numDistinct <= 63)
+			distinctBucket = 6;
+		else
+			distinctBucket = 7;
+		// Base-2 logarithm of the average count per distinct symbol, up to 3
+		int countBucket = Math.min(31 - Integer.numberOfLeadingZeros(Math.max(total / numDistinct, 1)), 3);
+		return ((orderBucket * 2 + (isFirst ? 1 : 0)) * 8 + distinctBucket) * 4 + countBucket;
+	}
+	
+}
@@ -187,6 +187,32 @@ public final class SimpleFrequencyTable implements FrequencyTable {
 	}
 	
 	
+	/**
+	 * Returns the symbol whose cumulative frequency range contains the specified value, which is the
+	 * highest symbol such that {@code getLow(symbol)} &le; {@code value}. This performs a binary
+	 * search directly on the array of cumulative frequencies, which is recomputed if necessary.
+	 * @param value the cumulative frequency value to query
+	 * @return the symbol whose range [getLow(symbol), getHigh(symbol)) contains {@code value}
+	 * @throws IllegalArgumentException if {@code value} &lt; 0 or {@code value} &ge; {@code getTotal()}
+	 */
+	public int getSymbol(int value) {
+		if (!(0 <= value && value < total))
+			throw new IllegalArgumentException("Value out of range");
+		if (cumulative == null)
+			initCumulative();
+		int start = 0;
+		int end = frequencies.length;
+		while (end - start > 1) {
+			int middle = (start + end) >>> 1;
+			if (cumulative[middle] > value)
+				end = middle;
+			else
+				start = middle;
+		}
+		return start;
+	}
+	
+	
 	// Recomputes the array of cumulative symbol frequencies.
 	private void initCumulative() {
 		cumulative = new int[frequencies.length + 1];
@@ -0,0 +1,342 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.Arrays;
+
+
+/**
+ * A mutable table of symbol frequencies that only stores the symbols with a non-zero frequency, in ascending
+ * order. The number of symbols cannot be changed after construction. A table with at most one such symbol
+ * needs no arrays at all, and the arrays grow on demand after that. Queries scan the stored symbols, so they
+ * take O(k) time for k symbols with a non-zero frequency, regardless of the symbol limit. This suits the
+ * contexts of a high-order PPM model, most of which only ever see a few distinct symbols.
+ * <p>The stored symbols can be iterated with {@link #getNumPresent()}, {@link #getPresentSymbol(int)},
+ * and {@link #getPresentFrequency(int)}, without testing every symbol of the alphabet.</p>
+ */
+public final class SparseFrequencyTable implements FrequencyTable {
+	
+	/*---- Constants ----*/
+	
+	// The initial length of the arrays, when a second symbol is stored.
+	private static final int INITIAL_CAPACITY = 4;
+	
+	
+	
+	/*---- Fields ----*/
+	
+	private final int symbolLimit;
+	
+	// The number of symbols with a non-zero frequency.
+	private int size;
+	
+	// While the arrays are null, the only stored symbol (if size is 1) and its frequency are kept here.
+	private int inlineSymbol;
+	private int inlineFrequency;
+	
+	// The stored symbols in ascending order and their frequencies, at indexes [0, size).
+	// Both are null until two symbols are stored, and they never shrink afterward.
+	private int[] symbols;
+	private int[] frequencies;
+	
+	// Always equal to the sum of the stored frequencies.
+	private int total;
+	
+	
+	
+	/*---- Constructor ----*/
+	
+	/**
+	 * Constructs a frequency table with the specified number of symbols, all with a frequency of 0.
+	 * @param symbolLimit the number of symbols, which must be at least 1
+	 * @throws IllegalArgumentException if {@code symbolLimit} &lt; 1
+	 */
+	public SparseFrequencyTable(int symbolLimit) {
+		if (symbolLimit < 1)
+			throw new IllegalArgumentException("At least 1 symbol needed");
+		this.symbolLimit = symbolLimit;
+		size = 0;
+		total = 0;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the number of symbols in this frequency table, which is at least 1.
+	 * @return the number of symbols in this frequency table
+	 */
+	public int getSymbolLimit() {
+		return symbolLimit;
+	}
+	
+	
+	/**
+	 * Returns the number of symbols with a non-zero frequency.
+	 * @return the number of stored symbols, in the range [0, getSymbolLimit()]
+	 */
+	public int getNumPresent() {
+		return size;
+	}
+	
+	
+	/**
+	 * Returns the length of the arrays that store the symbols, which is 0 while they are not allocated.
+	 * This only reflects the memory used by this table, and never decreases.
+	 * @return the capacity of this table's arrays
+	 */
+	public int getCapacity() {
+		return symbols != null ? symbols.length : 0;
+	}
+	
+	
+	/**
+	 * Returns the symbol at the specified index among the symbols with a non-zero frequency,
+	 * which are in ascending order. The index is only valid until the table is changed.
+	 * @param index the index to query, in the range [0, getNumPresent())
+	 * @return the symbol at the index
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public int getPresentSymbol(int index) {
+		checkIndex(index);
+		return symbols != null ? symbols[index] : inlineSymbol;
+	}
+	
+	
+	/**
+	 * Returns the frequency of the symbol at the specified index among the symbols with a non-zero frequency.
+	 * @param index the index to query, in the range [0, getNumPresent())
+	 * @return the frequency of the symbol at the index, which is positive
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public int getPresentFrequency(int index) {
+		checkIndex(index);
+		return symbols != null ? frequencies[index] : inlineFrequency;
+	}
+	
+	
+	/**
+	 * Returns the frequency of the specified symbol. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the frequency of the specified symbol
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int get(int symbol) {
+		checkSymbol(symbol);
+		int index = indexOf(symbol);
+		if (index < 0)
+			return 0;
+		return symbols != null ? frequencies[index] : inlineFrequency;
+	}
+	
+	
+	/**
+	 * Sets the frequency of the specified symbol to the specified value. The frequency value must be at least 0,
+	 * and setting it to 0 removes the symbol from storage. If an exception is thrown, then the state is left unchanged.
+	 * @param symbol the symbol to set
+	 * @param freq the frequency value to set
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 * @throws ArithmeticException if this set request would cause the total to exceed {@code Integer.MAX_VALUE}
+	 */
+	public void set(int symbol, int freq) {
+		checkSymbol(symbol);
+		if (freq < 0)
+			throw new IllegalArgumentException("Negative frequency");
+		
+		int index = indexOf(symbol);
+		int old = index < 0 ? 0 : (symbols != null ? frequencies[index] : inlineFrequency);
+		int temp = total - old;
+		if (temp < 0)
+			throw new AssertionError();
+		total = Math.addExact(temp, freq);
+		if (index < 0) {
+			if (freq > 0)
+				insert(~index, symbol, freq);
+		} else if (freq == 0)
+			remove(index);
+		else if (symbols != null)
+			frequencies[index] = freq;
+		else
+			inlineFrequency = freq;
+	}
+	
+	
+	/**
+	 * Increments the frequency of the specified symbol.
+	 * @param symbol the symbol whose frequency to increment
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public void increment(int symbol) {
+		checkSymbol(symbol);
+		int index = indexOf(symbol);
+		if (index >= 0 && (symbols != null ? frequencies[index] : inlineFrequency) == Integer.MAX_VALUE)
+			throw new ArithmeticException("Arithmetic overflow");
+		total = Math.addExact(total, 1);
+		if (index < 0)
+			insert(~index, symbol, 1);
+		else if (symbols != null)
+			frequencies[index]++;
+		else
+			inlineFrequency++;
+	}
+	
+	
+	/**
+	 * Returns the total of all symbol frequencies. The returned value is at
+	 * least 0 and is always equal to {@code getHigh(getSymbolLimit() - 1)}.
+	 * @return the total of all symbol frequencies
+	 */
+	public int getTotal() {
+		return total;
+	}
+	
+	
+	/**
+	 * Returns the sum of the frequencies of all the symbols strictly
+	 * below the specified symbol value. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the sum of the frequencies of all the symbols below {@code symbol}
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int getLow(int symbol) {
+		checkSymbol(symbol);
+		return sumBelow(symbol);
+	}
+	
+	
+	/**
+	 * Returns the sum of the frequencies of the specified symbol
+	 * and all the symbols below. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the sum of the frequencies of {@code symbol} and all symbols below
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int getHigh(int symbol) {
+		checkSymbol(symbol);
+		return sumBelow(symbol + 1);
+	}
+	
+	
+	/**
+	 * Returns the symbol whose cumulative frequency range contains the specified value.
+	 * This scans the stored symbols once, instead of performing a binary search over {@code getLow()} calls.
+	 * @param value the cumulative frequency value to query
+	 * @return the symbol whose range [getLow(symbol), getHigh(symbol)) contains {@code value}
+	 * @throws IllegalArgumentException if {@code value} &lt; 0 or {@code value} &ge; {@code getTotal()}
+	 */
+	public int getSymbol(int value) {
+		if (!(0 <= value && value < total))
+			throw new IllegalArgumentException("Value out of range");
+		if (symbols == null)
+			return inlineSymbol;
+		for (int i = 0; ; i++) {
+			value -= frequencies[i];
+			if (value < 0)
+				return symbols[i];
+		}
+	}
+	
+	
+	// Returns the sum of the frequencies of the stored symbols that are less than the given value.
+	private int sumBelow(int end) {
+		if (symbols == null)
+			return size == 1 && inlineSymbol < end ? inlineFrequency : 0;
+		int result = 0;
+		for (int i = 0; i < size && symbols[i] < end; i++)
+			result += frequencies[i];
+		return result;
+	}
+	
+	
+	// Returns the index of the given symbol if it is stored, otherwise
+	// ~insertionPoint (a negative number), like Arrays.binarySearch().
+	private int indexOf(int symbol) {
+		if (symbols == null) {
+			if (size == 0 || symbol < inlineSymbol)
+				return ~0;
+			return symbol == inlineSymbol ? 0 : ~1;
+		}
+		int start = 0;
+		int end = size;
+		while (start < end) {
+			int middle = (start + end) >>> 1;
+			int sym = symbols[middle];
+			if (sym < symbol)
+				start = middle + 1;
+			else if (sym > symbol)
+				end = middle;
+			else
+				return middle;
+		}
+		return ~start;
+	}
+	
+	
+	// Stores the given symbol with the given positive frequency at the given index, shifting the later symbols up.
+	private void insert(int index, int symbol, int freq) {
+		if (symbols == null && size == 0) {
+			inlineSymbol = symbol;
+			inlineFrequency = freq;
+			size = 1;
+			return;
+		}
+		if (symbols == null) {  // Move the inline symbol to new arrays
+			symbols = new int[INITIAL_CAPACITY];
+			frequencies = new int[INITIAL_CAPACITY];
+			symbols[0] = inlineSymbol;
+			frequencies[0] = inlineFrequency;
+		} else if (size == symbols.length) {
+			int newCapacity = Math.min(size * 2, symbolLimit);
+			symbols = Arrays.copyOf(symbols, newCapacity);
+			frequencies = Arrays.copyOf(frequencies, newCapacity);
+		}
+		System.arraycopy(symbols, index, symbols, index + 1, size - index);
+		System.arraycopy(frequencies, index, frequencies, index + 1, size - index);
+		symbols[index] = symbol;
+		frequencies[index] = freq;
+		size++;
+	}
+	
+	
+	// Removes the stored symbol at the given index, shifting the later symbols down.
+	private void remove(int index) {
+		size--;
+		if (symbols != null) {
+			System.arraycopy(symbols, index + 1, symbols, index, size - index);
+			System.arraycopy(frequencies, index + 1, frequencies, index, size - index);
+		}
+	}
+	
+	
+	// Returns silently if 0 <= index < size, otherwise throws an exception.
+	private void checkIndex(int index) {
+		if (!(0 <= index && index < size))
+			throw new IndexOutOfBoundsException();
+	}
+	
+	
+	// Returns silently if 0 <= symbol < symbolLimit, otherwise throws an exception.
+	private void checkSymbol(int symbol) {
+		if (!(0 <= symbol && symbol < symbolLimit))
+			throw new IllegalArgumentException("Symbol out of range");
+	}
+	
+	
+	/**
+	 * Returns a string representation of this frequency table,
+	 * useful for debugging only, and the format is subject to change.
+	 * @return a string representation of this frequency table
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < symbolLimit; i++)
+			sb.append(String.format("%d\t%d%n", i, get(i)));
+		return sb.toString();
+	}
+	
+}
@@ -0,0 +1,239 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.util.Objects;
+
+
+/**
+ * An immutable table of symbol frequencies, which is a snapshot taken at construction time.
+ * Besides the cumulative frequencies, it precomputes a lookup table that maps slices of the
+ * cumulative frequency range to symbols, so that {@link #getSymbol(int)} usually takes
+ * one or two array reads instead of a binary search. Useful for static models.
+ */
+public final class StaticFrequencyTable implements FrequencyTable {
+	
+	/*---- Fields ----*/
+	
+	// Base-2 logarithm of the maximum number of slots in the lookup table.
+	private static final int MAX_SLOT_BITS = 12;
+	
+	
+	// The frequency for each symbol. Its length is at least 1, and each element is non-negative.
+	private final int[] frequencies;
+	
+	// cumulative[i] is the sum of 'frequencies' from 0 (inclusive) to i (exclusive).
+	private final int[] cumulative;
+	
+	// Always equal to the sum of 'frequencies'.
+	private final int total;
+	
+	// The number of low-order bits of a cumulative value that are discarded to get its slot index.
+	private final int slotShift;
+	
+	// slotSymbols[i] is the symbol containing the cumulative value (i << slotShift), and the last element
+	// is the highest symbol with non-zero frequency. Thus the symbol containing any value in slot i is between
+	// slotSymbols[i] and slotSymbols[i + 1] inclusive. This array is null if the total is zero.
+	private final int[] slotSymbols;
+	
+	
+	
+	/*---- Constructors ----*/
+	
+	/**
+	 * Constructs a frequency table from the specified array of symbol frequencies. There must be at least
+	 * 1 symbol, no symbol has a negative frequency, and the total must not exceed {@code Integer.MAX_VALUE}.
+	 * @param freqs the array of symbol frequencies
+	 * @throws NullPointerException if the array is {@code null}
+	 * @throws IllegalArgumentException if {@code freqs.length} &lt; 1,
+	 * {@code freqs.length} = {@code Integer.MAX_VALUE}, or any element {@code freqs[i]} &lt; 0
+	 * @throws ArithmeticException if the total of {@code freqs} exceeds {@code Integer.MAX_VALUE}
+	 */
+	public StaticFrequencyTable(int[] freqs) {
+		this(new SimpleFrequencyTable(freqs));
+	}
+	
+	
+	/**
+	 * Constructs a frequency table by copying the specified frequency table.
+	 * Later changes to the specified table are not reflected in this table.
+	 * @param freqs the frequency table to copy
+	 * @throws NullPointerException if {@code freqs} is {@code null}
+	 * @throws IllegalArgumentException if {@code freqs.getSymbolLimit()} &lt; 1
+	 * or any element {@code freqs.get(i)} &lt; 0
+	 * @throws ArithmeticException if the total of all {@code freqs} elements exceeds {@code Integer.MAX_VALUE}
+	 */
+	public StaticFrequencyTable(FrequencyTable freqs) {
+		Objects.requireNonNull(freqs);
+		int numSym = freqs.getSymbolLimit();
+		if (numSym < 1)
+			throw new IllegalArgumentException("At least 1 symbol needed");
+		if (numSym > Integer.MAX_VALUE - 1)
+			throw new IllegalArgumentException("Too many symbols");
+		
+		frequencies = new int[numSym];
+		cumulative = new int[numSym + 1];
+		int sum = 0;
+		for (int i = 0; i < numSym; i++) {
+			int x = freqs.get(i);
+			if (x < 0)
+				throw new IllegalArgumentException("Negative frequency");
+			frequencies[i] = x;
+			sum = Math.addExact(x, sum);
+			cumulative[i + 1] = sum;
+		}
+		total = sum;
+		
+		if (total == 0) {
+			slotShift = 0;
+			slotSymbols = null;
+			return;
+		}
+		int valueBits = 32 - Integer.numberOfLeadingZeros(total - 1);  // Number of bits needed for total - 1
+		slotShift = Math.max(valueBits - MAX_SLOT_BITS, 0);
+		int numSlots = ((total - 1) >>> slotShift) + 1;
+		slotSymbols = new int[numSlots + 1];
+		int symbol = 0;
+		for (int i = 0; i < numSlots; i++) {
+			int value = i << slotShift;
+			while (cumulative[symbol + 1] <= value)
+				symbol++;
+			slotSymbols[i] = symbol;
+		}
+		while (cumulative[symbol + 1] < total)
+			symbol++;
+		slotSymbols[numSlots] = symbol;
+	}
+	
+	
+	
+	/*---- Methods ----*/
+	
+	/**
+	 * Returns the number of symbols in this frequency table, which is at least 1.
+	 * @return the number of symbols in this frequency table
+	 */
+	public int getSymbolLimit() {
+		return frequencies.length;
+	}
+	
+	
+	/**
+	 * Returns the frequency of the specified symbol. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the frequency of the specified symbol
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int get(int symbol) {
+		checkSymbol(symbol);
+		return frequencies[symbol];
+	}
+	
+	
+	/**
+	 * Returns the total of all symbol frequencies. The returned value is at
+	 * least 0 and is always equal to {@code getHigh(getSymbolLimit() - 1)}.
+	 * @return the total of all symbol frequencies
+	 */
+	public int getTotal() {
+		return total;
+	}
+	
+	
+	/**
+	 * Returns the sum of the frequencies of all the symbols strictly
+	 * below the specified symbol value. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the sum of the frequencies of all the symbols below {@code symbol}
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int getLow(int symbol) {
+		checkSymbol(symbol);
+		return cumulative[symbol];
+	}
+	
+	
+	/**
+	 * Returns the sum of the frequencies of the specified symbol
+	 * and all the symbols below. The returned value is at least 0.
+	 * @param symbol the symbol to query
+	 * @return the sum of the frequencies of {@code symbol} and all symbols below
+	 * @throws IllegalArgumentException if {@code symbol} &lt; 0 or {@code symbol} &ge; {@code getSymbolLimit()}
+	 */
+	public int getHigh(int symbol) {
+		checkSymbol(symbol);
+		return cumulative[symbol + 1];
+	}
+	
+	
+	/**
+	 * Returns the symbol whose cumulative frequency range contains the specified value, which is the
+	 * highest symbol such that {@code getLow(symbol)} &le; {@code value}. The lookup table narrows the
+	 * candidates down to the symbols overlapping the value's slot, which is usually just one symbol;
+	 * otherwise a binary search is performed over those candidates only.
+	 * @param value the cumulative frequency value to query
+	 * @return the symbol whose range [getLow(symbol), getHigh(symbol)) contains {@code value}
+	 * @throws IllegalArgumentException if {@code value} &lt; 0 or {@code value} &ge; {@code getTotal()}
+	 */
+	public int getSymbol(int value) {
+		if (!(0 <= value && value < total))
+			throw new IllegalArgumentException("Value out of range");
+		int slot = value >>> slotShift;
+		int start = slotSymbols[slot];
+		int end = slotSymbols[slot + 1] + 1;
+		while (end - start > 1) {
+			int middle = (start + end) >>> 1;
+			if (cumulative[middle] > value)
+				end = middle;
+			else
+				start = middle;
+		}
+		return start;
+	}
+	
+	
+	// Returns silently if 0 <= symbol < frequencies.length, otherwise throws an exception.
+	private void checkSymbol(int symbol) {
+		if (!(0 <= symbol && symbol < frequencies.length))
+			throw new IllegalArgumentException("Symbol out of range");
+	}
+	
+	
+	/**
+	 * Returns a string representation of this frequency table,
+	 * useful for debugging only, and the format is subject to change.
+	 * @return a string representation of this frequency table
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < frequencies.length; i++)
+			sb.append(String.format("%d\t%d%n", i, frequencies[i]));
+		return sb.toString();
+	}
+	
+	
+	/**
+	 * Unsupported operation, because this frequency table is immutable.
+	 * @param symbol ignored
+	 * @param freq ignored
+	 * @throws UnsupportedOperationException because this frequency table is immutable
+	 */
+	public void set(int symbol, int freq) {
+		throw new UnsupportedOperationException();
+	}
+	
+	
+	/**
+	 * Unsupported operation, because this frequency table is immutable.
+	 * @param symbol ignored
+	 * @throws UnsupportedOperationException because this frequency table is immutable
+	 */
+	public void increment(int symbol) {
+		throw new UnsupportedOperationException();
+	}
+	
+}
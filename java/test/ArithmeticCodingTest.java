@@ -50,6 +50,15 @@ public abstract class ArithmeticCodingTest {
 	}
 	
 	
+	@Test public void testLongSkewed() {
+		// Longer than the block buffers used by the applications
+		byte[] b = new byte[150000];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte)(Integer.numberOfLeadingZeros(random.nextInt() | 1) * 3);
+		test(b);
+	}
+	
+	
 	@Test public void testUniformRandom() {
 		for (int i = 0; i < 100; i++) {
 			byte[] b = new byte[random.nextInt(1000)];
@@ -6,10 +6,14 @@
  * https://www.nayuki.io/page/reference-arithmetic-coding
  */
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import org.junit.Test;
 
 
 /**
@@ -17,11 +21,53 @@ import java.io.InputStream;
  */
 public class ArithmeticCompressTest extends ArithmeticCodingTest {
 	
-	protected byte[] compress(byte[] b) throws IOException {
+	@Test public void testHugeCounts() {
+		// Counts of files over 2 GiB, where either one count or only the sum exceeds the range of an int
+		long[] oneHuge = new long[256];
+		oneHuge[0] = 3L << 31;
+		oneHuge[1] = 1;
+		oneHuge[255] = 12345;
+		long[] manyLarge = new long[256];
+		for (int i = 0; i < manyLarge.length; i++)
+			manyLarge[i] = (1 << 24) + i;
+		for (long[] counts : new long[][]{oneHuge, manyLarge}) {
+			FrequencyTable freqs = ArithmeticCompress.toFrequencyTable(counts);
+			assertEquals(FrequencyHeader.NORMALIZED_TOTAL + 1, freqs.getTotal());
+			assertEquals(1, freqs.get(256));
+			int[] values = new int[257];
+			for (int i = 0; i < counts.length; i++) {
+				values[i] = freqs.get(i);
+				assertTrue((counts[i] > 0) == (values[i] > 0));
+			}
+			values[256] = 1;
+			assertEquals(freqs.getTotal(), new StaticFrequencyTable(values).getTotal());
+		}
+	}
+	
+	
+	@Test public void testOriginalFormat() throws IOException {
+		// The original format has no marker, and its frequencies are 32 bits each and not normalized
+		byte[] b = {5, 0, 5, 5, (byte)255, 0, 5};
 		FrequencyTable freqs = new SimpleFrequencyTable(new int[257]);
 		for (byte x : b)
 			freqs.increment(x & 0xFF);
-		freqs.increment(256);  // EOF symbol gets a frequency of 1
+		freqs.increment(256);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			for (int i = 0; i < 256; i++)
+				bitOut.writeBits(32, freqs.get(i));
+			ArithmeticCompress.compress(freqs, new ByteArrayInputStream(b), bitOut);
+		}
+		assertArrayEquals(b, decompress(out.toByteArray()));
+	}
+	
+	
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		long[] counts = new long[256];
+		for (byte x : b)
+			counts[x & 0xFF]++;
+		FrequencyTable freqs = ArithmeticCompress.toFrequencyTable(counts);
 		
 		InputStream in = new ByteArrayInputStream(b);
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
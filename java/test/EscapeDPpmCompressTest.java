@@ -0,0 +1,59 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link PpmCompress} coupled with {@link PpmDecompress}, using escape method D, where a new
+ * symbol starts with a count of 1 and later occurrences add 2. Also tests the method with off-heap
+ * contexts, which count symbols in a separate implementation.
+ */
+public class EscapeDPpmCompressTest extends ArithmeticCodingTest {
+	
+	@Test public void testOffHeap() throws IOException {
+		Random rand = new Random(0);
+		for (int i = 0; i < 20; i++) {
+			byte[] b = new byte[rand.nextInt(20000)];
+			for (int j = 0; j < b.length; j++)
+				b[j] = (byte)(Integer.numberOfLeadingZeros(rand.nextInt() | 1) * 3);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BitOutputStream bitOut = new BitOutputStream(out)) {
+				PpmCompress.compress(new ByteArrayInputStream(b), bitOut, new PpmOptions().setOrder(4)
+					.setEscapeMethod(PpmEscapeMethod.D).setOffHeap(true).setMemoryLimit(1 << 16).setBudgetPolicy(PpmBudgetPolicy.PRUNE));
+			}
+			assertArrayEquals(b, decompress(out.toByteArray()));
+		}
+	}
+	
+	
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			PpmCompress.compress(in, bitOut, new PpmOptions().setOrder(4).setEscapeMethod(PpmEscapeMethod.D));
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PpmDecompress.decompress(new BitInputStream(in), out);
+		return out.toByteArray();
+	}
+	
+}
@@ -0,0 +1,118 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import java.util.Random;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link FenwickFrequencyTable} against {@link SimpleFrequencyTable}, which computes the same
+ * values from a plain array, on random tables with many zero frequencies and random updates.
+ */
+public class FenwickFrequencyTableTest {
+	
+	/*---- Test cases ----*/
+	
+	@Test public void testRandomTables() {
+		for (int i = 0; i < 300; i++) {
+			// Sizes around powers of 2 exercise the edges of the tree
+			int numSymbols = i < 20 ? i + 1 : random.nextInt(300) + 1;
+			int[] freqs = new int[numSymbols];
+			for (int j = 0; j < numSymbols; j++)
+				freqs[j] = random.nextInt(3) == 0 ? 0 : random.nextInt(1 << random.nextInt(12));
+			if (random.nextBoolean())
+				freqs[numSymbols - 1] = 0;
+			
+			FrequencyTable expected = new SimpleFrequencyTable(freqs);
+			FrequencyTable actual = new FenwickFrequencyTable(freqs);
+			assertTablesEqual(expected, actual);
+			for (int j = 0; j < 50; j++) {
+				// Update the last symbol often, and sometimes set a frequency to 0
+				int symbol = random.nextInt(4) == 0 ? numSymbols - 1 : random.nextInt(numSymbols);
+				if (random.nextBoolean()) {
+					expected.increment(symbol);
+					actual.increment(symbol);
+				} else {
+					int freq = random.nextInt(3) == 0 ? 0 : random.nextInt(1000);
+					expected.set(symbol, freq);
+					actual.set(symbol, freq);
+				}
+				assertTablesEqual(expected, actual);
+			}
+		}
+	}
+	
+	
+	@Test public void testCopy() {
+		FrequencyTable sparse = new SparseFrequencyTable(257);
+		for (int i = 0; i < 1000; i++)
+			sparse.increment(random.nextInt(4) == 0 ? 256 : random.nextInt(64) * 4);
+		assertTablesEqual(new SimpleFrequencyTable(sparse), new FenwickFrequencyTable(sparse));
+	}
+	
+	
+	@Test public void testAllZero() {
+		FrequencyTable freqs = new FenwickFrequencyTable(new int[5]);
+		assertTablesEqual(new SimpleFrequencyTable(new int[5]), freqs);
+		try {
+			freqs.getSymbol(0);
+			fail("Value accepted with a total of 0");
+		} catch (IllegalArgumentException e) {}  // Pass
+	}
+	
+	
+	@Test public void testInvalidArguments() {
+		FrequencyTable freqs = new FenwickFrequencyTable(new int[]{1, 0, 2});
+		int[] symbols = {-1, 3};
+		for (int symbol : symbols) {
+			try {
+				freqs.get(symbol);
+				fail("Symbol " + symbol + " accepted");
+			} catch (IllegalArgumentException e) {}  // Pass
+			try {
+				freqs.increment(symbol);
+				fail("Symbol " + symbol + " accepted");
+			} catch (IllegalArgumentException e) {}  // Pass
+		}
+		try {
+			freqs.set(1, -1);
+			fail("Negative frequency accepted");
+		} catch (IllegalArgumentException e) {}  // Pass
+		try {
+			freqs.getSymbol(3);
+			fail("Value of the total accepted");
+		} catch (IllegalArgumentException e) {}  // Pass
+		assertTablesEqual(new SimpleFrequencyTable(new int[]{1, 0, 2}), freqs);
+	}
+	
+	
+	
+	/*---- Utilities ----*/
+	
+	// Asserts that the two tables have the same frequencies, cumulative frequencies and symbol lookups.
+	private static void assertTablesEqual(FrequencyTable expected, FrequencyTable actual) {
+		assertEquals(expected.getSymbolLimit(), actual.getSymbolLimit());
+		assertEquals(expected.getTotal(), actual.getTotal());
+		for (int i = 0; i < expected.getSymbolLimit(); i++) {
+			assertEquals(expected.get(i), actual.get(i));
+			assertEquals(expected.getLow(i), actual.getLow(i));
+			assertEquals(expected.getHigh(i), actual.getHigh(i));
+			// Both ends of each non-empty range must map back to the symbol
+			if (expected.get(i) > 0) {
+				assertEquals(i, actual.getSymbol(expected.getLow(i)));
+				assertEquals(i, actual.getSymbol(expected.getHigh(i) - 1));
+			}
+		}
+	}
+	
+	
+	private static Random random = new Random();
+	
+}
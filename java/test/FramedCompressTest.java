@@ -0,0 +1,125 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link FramedCompress} coupled with {@link FramedDecompress}, with blocks that are small enough for
+ * the longer inputs to span many of them. Also tests the other coders, the block index, and that corrupt or
+ * truncated files are rejected.
+ */
+public class FramedCompressTest extends ArithmeticCodingTest {
+	
+	@Test public void testOtherCoders() throws IOException {
+		byte[] b = skewedBytes(5000);
+		for (FramedCoder coder : FramedCoder.values()) {
+			byte[] compressed = compress(b, coder);
+			assertArrayEquals(b, decompress(compressed));
+		}
+	}
+	
+	
+	@Test public void testIndex() throws IOException {
+		// Decompress the blocks in reverse order through the index
+		byte[] b = skewedBytes(10500);
+		File file = File.createTempFile("framed", ".bin");
+		try {
+			try (OutputStream out = new FileOutputStream(file)) {
+				out.write(compress(b));
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				List<FramedCompress.Block> blocks = FramedDecompress.readIndex(raf);
+				assertEquals(11, blocks.size());
+				for (int i = blocks.size() - 1; i >= 0; i--) {
+					byte[] block = FramedDecompress.decompressBlock(raf, blocks.get(i), null);
+					assertEquals(i < 10 ? BLOCK_SIZE : 500, block.length);
+					for (int j = 0; j < block.length; j++)
+						assertEquals(b[i * BLOCK_SIZE + j], block[j]);
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	
+	@Test public void testCorruption() throws IOException {
+		// Every single changed byte must be detected, wherever it is
+		byte[] compressed = compress(skewedBytes(3000));
+		for (int i = 0; i < compressed.length; i++) {
+			compressed[i] ^= 1 << (i % 8);
+			try {
+				decompress(compressed);
+				fail("Corruption at offset " + i + " not detected");
+			} catch (IOException e) {}  // Pass
+			compressed[i] ^= 1 << (i % 8);
+		}
+	}
+	
+	
+	@Test public void testTruncation() throws IOException {
+		byte[] compressed = compress(skewedBytes(3000));
+		for (int i = 0; i < compressed.length; i++) {
+			byte[] truncated = new byte[i];
+			System.arraycopy(compressed, 0, truncated, 0, i);
+			try {
+				decompress(truncated);
+				fail("Truncation to " + i + " bytes not detected");
+			} catch (IOException e) {}  // Pass
+		}
+	}
+	
+	
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		return compress(b, FramedCoder.STATIC);
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FramedDecompress.decompress(in, out, null);
+		return out.toByteArray();
+	}
+	
+	
+	private static byte[] compress(byte[] b, FramedCoder coder) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FramedCompress.compress(in, out, coder, BLOCK_SIZE, null);
+		return out.toByteArray();
+	}
+	
+	
+	private static byte[] skewedBytes(int length) {
+		byte[] result = new byte[length];
+		Random rand = new Random(length);
+		for (int i = 0; i < result.length; i++)
+			result[i] = (byte)(Integer.numberOfLeadingZeros(rand.nextInt() | 1) * 3);
+		return result;
+	}
+	
+	
+	private static final int BLOCK_SIZE = 1000;
+	
+}
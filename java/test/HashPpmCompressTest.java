@@ -0,0 +1,105 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link PpmCompress} coupled with {@link PpmDecompress}, using a high-order model whose
+ * contexts are kept in a small {@link PpmHashStore}, so that many contexts are evicted. It uses
+ * escape method B, where contexts can hold symbols that are seen but not yet predicted.
+ */
+public class HashPpmCompressTest extends ArithmeticCodingTest {
+	
+	@Test public void testMemoryLimit() {
+		// Low-order contexts of data that mixes text with random bytes see many distinct symbols each
+		long limit = 1 << 16;
+		for (int order = 1; order <= 3; order++) {
+			PpmModel model = new PpmModel(new PpmOptions().setOrder(order).setMemoryLimit(limit), 257, 256);
+			PpmHistory history = new PpmHistory(order);
+			Random rand = new Random(order);
+			long maxUsed = 0;
+			for (int i = 0; i < 300000; i++) {
+				int symbol = i % 1000 < 500 ? 'a' + rand.nextInt(8) : rand.nextInt(256);
+				model.incrementContexts(history, symbol);
+				history.append(symbol);
+				maxUsed = Math.max(model.getHashStore().getUsedBytes(), maxUsed);
+			}
+			assertTrue(maxUsed <= limit);
+			assertTrue(maxUsed > limit / 2);
+		}
+	}
+	
+	
+	@Test public void testStaleContextEvicted() {
+		// A single bucket, holding a context with a large total that is never used again
+		PpmHashStore store = new PpmHashStore(PpmHashStore.BYTES_PER_SLOT * 7, 257);
+		assertEquals(4, store.getCapacity());
+		PpmModel.Context stale = store.getOrCreate(0, 1);
+		for (int i = 0; i < 100; i++)
+			stale.frequencies.increment(i % 3);
+		store.accountUpdates();
+		
+		// Contexts in use with lower totals must win against it, while new contexts keep arriving
+		for (int i = 1; i <= 10; i++) {
+			store.getOrCreate(1, 1).frequencies.increment(0);
+			store.getOrCreate(2, 1).frequencies.increment(0);
+			store.accountUpdates();
+			store.getOrCreate(100 + i, 1);
+			store.accountUpdates();
+		}
+		assertNull(store.get(0, 1));
+		assertNotNull(store.get(1, 1));
+		assertNotNull(store.get(2, 1));
+	}
+	
+	
+	@Test public void testUpdatedContextsKept() {
+		PpmHashStore store = new PpmHashStore(PpmHashStore.BYTES_PER_SLOT * 7, 257);
+		PpmModel.Context[] chain = new PpmModel.Context[6];
+		for (int order = 1; order <= chain.length; order++)
+			chain[order - 1] = store.getOrCreate(order, order);
+		// The bucket is full of the contexts of the current update, so none of them may be evicted
+		for (int order = 1; order <= 4; order++)
+			assertSame(chain[order - 1], store.get(order, order));
+		assertNull(store.get(5, 5));
+		store.accountUpdates();
+		store.getOrCreate(5, 5);
+		assertNotNull(store.get(5, 5));
+	}
+	
+	
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			PpmCompress.compress(in, bitOut, new PpmOptions().setOrder(6).setMemoryLimit(1 << 16).setEscapeMethod(PpmEscapeMethod.B));
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PpmDecompress.decompress(new BitInputStream(in), out);
+		return out.toByteArray();
+	}
+	
+}
@@ -0,0 +1,56 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link PpmCompress} coupled with {@link PpmDecompress}, using an order 1 trie model whose node limit
+ * is small enough that the contexts are pruned repeatedly, including the order 1 contexts, which are leaves.
+ * Also tests pruning an order 0 model, whose only context is a leaf.
+ */
+public class LowOrderPrunedPpmCompressTest extends ArithmeticCodingTest {
+	
+	@Test public void testOrder0() throws IOException {
+		byte[] b = new byte[5000];
+		new Random(0).nextBytes(b);
+		PpmOptions options = new PpmOptions().setOrder(0).setNodeLimit(1).setBudgetPolicy(PpmBudgetPolicy.PRUNE);
+		assertArrayEquals(b, decompress(compress(b, options)));
+	}
+	
+	
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		return compress(b, new PpmOptions().setOrder(1).setNodeLimit(50).setBudgetPolicy(PpmBudgetPolicy.PRUNE));
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PpmDecompress.decompress(new BitInputStream(in), out);
+		return out.toByteArray();
+	}
+	
+	
+	private static byte[] compress(byte[] b, PpmOptions options) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			PpmCompress.compress(in, bitOut, options);
+		}
+		return out.toByteArray();
+	}
+	
+}
@@ -0,0 +1,38 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Tests {@link PpmCompress} coupled with {@link PpmDecompress}, using a trie model
+ * kept in a small off-heap arena (see {@link PpmArena}) that is pruned repeatedly.
+ */
+public class OffHeapPpmCompressTest extends ArithmeticCodingTest {
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			PpmCompress.compress(in, bitOut, new PpmOptions().setOrder(5).setOffHeap(true).setMemoryLimit(1 << 16).setBudgetPolicy(PpmBudgetPolicy.PRUNE).setSeeEnabled(true));
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PpmDecompress.decompress(new BitInputStream(in), out);
+		return out.toByteArray();
+	}
+	
+}
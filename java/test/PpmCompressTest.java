@@ -6,10 +6,12 @@
  * https://www.nayuki.io/page/reference-arithmetic-coding
  */
 
+import static org.junit.Assert.fail;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import org.junit.Test;
 
 
 /**
@@ -17,6 +19,37 @@ import java.io.InputStream;
  */
 public class PpmCompressTest extends ArithmeticCodingTest {
 	
+	@Test public void testUnsupportedVersion() throws IOException {
+		byte[] compressed = compress(new byte[]{1, 2, 3});
+		compressed[0] = (byte)(PpmOptions.HEADER_VERSION + 1);
+		try {
+			decompress(compressed);
+			fail("Header version not checked");
+		} catch (IOException e) {}  // Pass
+	}
+	
+	
+	@Test public void testHugeMemoryLimit() throws IOException {
+		// Headers that ask for more memory than the decompressor accepts must fail before anything is allocated
+		PpmOptions[] headers = {
+			new PpmOptions().setMemoryLimit(1L << 40),
+			new PpmOptions().setMemoryLimit(PpmOptions.DEFAULT_MAX_READ_MEMORY + 4).setOffHeap(true),
+			new PpmOptions().setMemoryLimit(-1L >>> 1),
+		};
+		for (PpmOptions options : headers) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BitOutputStream bitOut = new BitOutputStream(out)) {
+				options.write(bitOut);
+			}
+			try {
+				decompress(out.toByteArray());
+				fail("Memory limit of " + options.getMemoryLimit() + " accepted");
+			} catch (IOException e) {}  // Pass
+		}
+	}
+	
+	
+	
 	protected byte[] compress(byte[] b) throws IOException {
 		InputStream in = new ByteArrayInputStream(b);
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
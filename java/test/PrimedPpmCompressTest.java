@@ -0,0 +1,128 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link PpmCompress} coupled with {@link PpmDecompress}, using an off-heap model primed with a model
+ * file that {@link PpmTrain} made from a fixed pseudorandom corpus. The private arena of each model is
+ * small, so that longer inputs make the model return to the image repeatedly.
+ */
+public class PrimedPpmCompressTest extends ArithmeticCodingTest {
+	
+	@Test public void testConcurrentMessages() throws Exception {
+		// Many threads share the one image, and each message must round-trip as if it were alone
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				final int seed = i;
+				results.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws IOException {
+						Random rand = new Random(seed);
+						byte[] b = new byte[rand.nextInt(2000)];
+						for (int j = 0; j < b.length; j++)
+							b[j] = (byte)(Integer.numberOfLeadingZeros(rand.nextInt() | 1) * 3);
+						return Arrays.equals(b, decompress(compress(b)));
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				if (!result.get())
+					throw new AssertionError("Round trip failed");
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	
+	@Test public void testCorruptModelFile() throws IOException {
+		// Changing any int after the id must make the file fail to map
+		File file = File.createTempFile("ppm-model", ".bin");
+		try {
+			PpmOptions options = new PpmOptions().setOrder(2).setOffHeap(true).setMemoryLimit(1 << 16);
+			PpmModelImage.write(PpmTrain.train(new ByteArrayInputStream(new byte[]{1, 2, 3, 1, 2, 3}), options), file);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				for (long i = 4 * 4; i < raf.length(); i += 4) {
+					raf.seek(i);
+					int x = raf.readInt();
+					raf.seek(i);
+					raf.writeInt(x ^ 1);
+					try {
+						PpmModelImage.map(file);
+						fail("Corruption at offset " + i + " not detected");
+					} catch (IOException e) {}  // Pass
+					raf.seek(i);
+					raf.writeInt(x);
+				}
+			}
+			PpmModelImage.map(file);
+		} finally {
+			file.delete();
+		}
+	}
+	
+	
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			PpmCompress.compress(in, bitOut, image.applyTo(new PpmOptions().setMemoryLimit(1 << 16).setBudgetPolicy(PpmBudgetPolicy.PRUNE)), image);
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PpmDecompress.decompress(new BitInputStream(in), out, image);
+		return out.toByteArray();
+	}
+	
+	
+	private static PpmModelImage image = trainImage();
+	
+	
+	// Trains an order 4 model with SEE on skewed pseudorandom bytes, and maps it from a temporary file.
+	private static PpmModelImage trainImage() {
+		byte[] corpus = new byte[100000];
+		Random rand = new Random(1);
+		for (int i = 0; i < corpus.length; i++)
+			corpus[i] = (byte)(Integer.numberOfLeadingZeros(rand.nextInt() | 1) * 3);
+		try {
+			File file = File.createTempFile("ppm-model", ".bin");
+			file.deleteOnExit();
+			PpmOptions options = new PpmOptions().setOrder(4).setOffHeap(true).setMemoryLimit(1 << 22)
+				.setBudgetPolicy(PpmBudgetPolicy.PRUNE).setSeeEnabled(true);
+			PpmModelImage.write(PpmTrain.train(new ByteArrayInputStream(corpus), options), file);
+			return PpmModelImage.map(file);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+}
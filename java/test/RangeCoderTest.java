@@ -0,0 +1,51 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Tests {@link RangeEncoder} coupled with {@link RangeDecoder}, using the same adaptive model as
+ * {@link AdaptiveArithmeticCompress} (a flat initial table of 257 symbols, incremented after each byte).
+ */
+public class RangeCoderTest extends ArithmeticCodingTest {
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		FrequencyTable freqs = new SimpleFrequencyTable(new FlatFrequencyTable(257));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RangeEncoder enc = new RangeEncoder(out);
+		for (byte x : b) {
+			int symbol = x & 0xFF;
+			enc.write(freqs, symbol);
+			freqs.increment(symbol);
+		}
+		enc.write(freqs, 256);  // EOF
+		enc.finish();
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FrequencyTable freqs = new SimpleFrequencyTable(new FlatFrequencyTable(257));
+		RangeDecoder dec = new RangeDecoder(in);
+		while (true) {
+			int symbol = dec.read(freqs);
+			if (symbol == 256)  // EOF symbol
+				break;
+			out.write(symbol);
+			freqs.increment(symbol);
+		}
+		return out.toByteArray();
+	}
+	
+}
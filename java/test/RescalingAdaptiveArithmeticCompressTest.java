@@ -0,0 +1,38 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Tests {@link AdaptiveArithmeticCompress} coupled with {@link AdaptiveArithmeticDecompress},
+ * with a small rescaling limit so that the frequencies are halved many times.
+ */
+public class RescalingAdaptiveArithmeticCompressTest extends ArithmeticCodingTest {
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			AdaptiveArithmeticCompress.compress(in, bitOut, 600);
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AdaptiveArithmeticDecompress.decompress(new BitInputStream(in), out);
+		return out.toByteArray();
+	}
+	
+}
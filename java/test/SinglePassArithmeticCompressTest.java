@@ -0,0 +1,75 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.Test;
+
+
+/**
+ * Tests the single-pass block format of {@link ArithmeticCompress} coupled with {@link ArithmeticDecompress},
+ * with blocks that are small enough for the longest input to span two of them, but large enough
+ * for its frequencies to be normalized.
+ */
+public class SinglePassArithmeticCompressTest extends ArithmeticCodingTest {
+	
+	@Test public void testAdaptiveHeaders() throws IOException {
+		// Tables like those of text blocks, with many absent symbols and small frequencies
+		Random rand = new Random(0);
+		int[][] tables = new int[50][256];
+		long rawBits = 0;
+		for (int[] freqs : tables) {
+			for (int i = 32; i < 128; i++)
+				freqs[i] = rand.nextInt(4) == 0 ? 0 : rand.nextInt(1 << rand.nextInt(10)) + 1;
+			rawBits += FrequencyHeader.getSize(freqs);
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			ArithmeticEncoder enc = new ArithmeticEncoder(32, bitOut);
+			FrequencyHeader.AdaptiveModel model = new FrequencyHeader.AdaptiveModel();
+			for (int[] freqs : tables)
+				FrequencyHeader.write(freqs, enc, model);
+			enc.finish();
+		}
+		assertTrue(out.size() * 8L < rawBits * 9 / 10);
+		
+		ArithmeticDecoder dec = new ArithmeticDecoder(32, new BitInputStream(new ByteArrayInputStream(out.toByteArray())));
+		FrequencyHeader.AdaptiveModel model = new FrequencyHeader.AdaptiveModel();
+		for (int[] freqs : tables) {
+			int[] actual = new int[freqs.length];
+			FrequencyHeader.read(dec, actual, model);
+			assertArrayEquals(freqs, actual);
+		}
+	}
+	
+	
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			ArithmeticCompress.compressBlocks(in, bitOut, 100000);
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ArithmeticDecompress.decompress(new BitInputStream(in), out);
+		return out.toByteArray();
+	}
+	
+}
@@ -0,0 +1,39 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Tests the single-pass block format of {@link ArithmeticCompress} coupled with {@link ArithmeticDecompress},
+ * with blocks that are small enough for the longer inputs to span many of them, so that
+ * blocks reuse recent tables as well as send new ones.
+ */
+public class SmallBlockArithmeticCompressTest extends ArithmeticCodingTest {
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			ArithmeticCompress.compressBlocks(in, bitOut, 1000);
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ArithmeticDecompress.decompress(new BitInputStream(in), out);
+		return out.toByteArray();
+	}
+	
+}
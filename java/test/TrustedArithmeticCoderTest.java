@@ -0,0 +1,92 @@
+/* 
+ * Reference arithmetic coding
+ * 
+ * Copyright (c) Project Nayuki
+ * MIT License. See readme file.
+ * https://www.nayuki.io/page/reference-arithmetic-coding
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link ArithmeticEncoder} coupled with {@link ArithmeticDecoder} in trusted mode, using the same
+ * adaptive model as {@link AdaptiveArithmeticCompress}, and checks that the output is the same as in checked mode.
+ */
+public class TrustedArithmeticCoderTest extends ArithmeticCodingTest {
+	
+	protected byte[] compress(byte[] b) throws IOException {
+		byte[] result = compress(b, true);
+		assertArrayEquals(compress(b, false), result);
+		return result;
+	}
+	
+	
+	private static byte[] compress(byte[] b, boolean trusted) throws IOException {
+		FrequencyTable freqs = new SimpleFrequencyTable(new FlatFrequencyTable(257));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BitOutputStream bitOut = new BitOutputStream(out)) {
+			ArithmeticEncoder enc = new ArithmeticEncoder(32, bitOut, trusted);
+			for (byte x : b) {
+				int symbol = x & 0xFF;
+				enc.write(freqs, symbol);
+				freqs.increment(symbol);
+			}
+			enc.write(freqs, 256);  // EOF
+			enc.finish();
+		}
+		return out.toByteArray();
+	}
+	
+	
+	protected byte[] decompress(byte[] b) throws IOException {
+		InputStream in = new ByteArrayInputStream(b);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FrequencyTable freqs = new SimpleFrequencyTable(new FlatFrequencyTable(257));
+		ArithmeticDecoder dec = new ArithmeticDecoder(32, new BitInputStream(in), true);
+		while (true) {
+			int symbol = dec.read(freqs);
+			if (symbol == 256)  // EOF symbol
+				break;
+			out.write(symbol);
+			freqs.increment(symbol);
+		}
+		return out.toByteArray();
+	}
+	
+	
+	// Trusted mode still checks the table of a bulk call once, before coding anything
+	@Test(expected = AssertionError.class)
+	public void testWriteAllInconsistentTable() throws IOException {
+		ArithmeticEncoder enc = new ArithmeticEncoder(32, new BitOutputStream(new ByteArrayOutputStream()), true);
+		enc.writeAll(newInconsistentTable(), new byte[]{0, 1, 2}, 0, 3);
+	}
+	
+	
+	@Test(expected = AssertionError.class)
+	public void testReadAllInconsistentTable() throws IOException {
+		ArithmeticDecoder dec = new ArithmeticDecoder(32, new BitInputStream(new ByteArrayInputStream(new byte[16])), true);
+		dec.readAll(newInconsistentTable(), new byte[3], 0, 3);
+	}
+	
+	
+	// Returns a table of 257 symbols whose total is one more than the sum of its frequencies.
+	private static FrequencyTable newInconsistentTable() {
+		final FrequencyTable freqs = new SimpleFrequencyTable(new FlatFrequencyTable(257));
+		return new FrequencyTable() {
+			public int getSymbolLimit() { return freqs.getSymbolLimit(); }
+			public int get(int symbol) { return freqs.get(symbol); }
+			public void set(int symbol, int freq) { freqs.set(symbol, freq); }
+			public void increment(int symbol) { freqs.increment(symbol); }
+			public int getTotal() { return freqs.getTotal() + 1; }
+			public int getLow(int symbol) { return freqs.getLow(symbol); }
+			public int getHigh(int symbol) { return freqs.getHigh(symbol); }
+		};
+	}
+	
+}